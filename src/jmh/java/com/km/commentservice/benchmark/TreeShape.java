@@ -0,0 +1,88 @@
+package com.km.commentservice.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+import com.km.commentservice.dto.CommentReply;
+
+/**
+ * Shapes of comment threads used by the benchmarks. A generated thread hangs off comment {@link #PARENT_ID}
+ * and is returned in depth first order with siblings in id order, the order the tree queries read it in.
+ *
+ * @author karanm
+ */
+public enum TreeShape {
+    // Every comment replies to the parent
+    WIDE,
+    // Reply chains of CHAIN_LENGTH comments each
+    DEEP,
+    // Every comment has up to FAN_OUT replies
+    BALANCED;
+
+    public static final int PARENT_ID = 1;
+    public static final int CHAIN_LENGTH = 64;
+    public static final int FAN_OUT = 10;
+
+    private static final String BODY = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor " +
+            "incididunt ut labore et dolore magna aliqua.";
+
+    /**
+     * Generates a thread of the given size below {@link #PARENT_ID}.
+     *
+     * @param size the number of comments in the thread
+     * @return the comments in depth first order
+     */
+    public List<CommentReply> generate(int size) {
+        // Comment ids start after the parent, parents[i] is the parent of comment id i + PARENT_ID + 1
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            int id = i + PARENT_ID + 1;
+            parents[i] = switch (this) {
+                case WIDE -> PARENT_ID;
+                case DEEP -> i % CHAIN_LENGTH == 0 ? PARENT_ID : id - 1;
+                case BALANCED -> i < FAN_OUT ? PARENT_ID : (i / FAN_OUT - 1) + PARENT_ID + 1;
+            };
+        }
+
+        List<List<Integer>> children = new ArrayList<>(size + PARENT_ID + 1);
+        for (int i = 0; i < size + PARENT_ID + 1; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            children.get(parents[i]).add(i + PARENT_ID + 1);
+        }
+
+        List<CommentReply> replies = new ArrayList<>(size);
+        Date now = new Date();
+        Deque<int[]> stack = new ArrayDeque<>();
+        List<Integer> topLevel = children.get(PARENT_ID);
+        for (int i = topLevel.size() - 1; i >= 0; i--) {
+            stack.push(new int[]{topLevel.get(i), 1});
+        }
+        while (!stack.isEmpty()) {
+            int[] entry = stack.pop();
+            int id = entry[0];
+            List<Integer> replyIds = children.get(id);
+            replies.add(CommentReply.builder()
+                    .id(id)
+                    .user("user" + (id % 100))
+                    .body(BODY)
+                    .parentId(parents[id - PARENT_ID - 1])
+                    .replies((long) replyIds.size())
+                    .likeCount((long) (id % 7))
+                    .dislikeCount((long) (id % 3))
+                    .level(entry[1])
+                    .created(now)
+                    .updated(now)
+                    .isDeleted(false)
+                    .build());
+            for (int i = replyIds.size() - 1; i >= 0; i--) {
+                stack.push(new int[]{replyIds.get(i), entry[1] + 1});
+            }
+        }
+        return replies;
+    }
+}
@@ -0,0 +1,127 @@
+package com.km.commentservice.controller;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Cost of the logging of one tree request, with the lines the controller, service and repository logged per request.
+ * SYNC logs them at INFO straight to the file, as the service did before, ASYNC logs them at INFO through the async
+ * appender of logback-spring.xml, and SAMPLED logs them at DEBUG with INFO disabled plus the sampled request summary.
+ * Lines go to a file under target rather than the console, to keep them out of the JMH output. When the file cannot keep
+ * up, ASYNC drops INFO lines instead of waiting, so part of its throughput can be lines that were never written.
+ *
+ * @author karanm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RequestLoggingBenchmark {
+    private static final double SAMPLE_RATE = 0.01;
+
+    @Param({"SYNC", "ASYNC", "SAMPLED"})
+    private String mode;
+
+    private LoggerContext loggerContext;
+    private Logger controllerLogger;
+    private Logger serviceLogger;
+    private Logger repositoryLogger;
+    private Logger summaryLogger;
+
+    private final Integer parentId = 12345;
+    private final Integer maxDepth = 5;
+    private final String path = "/0009ix/000abc";
+
+    @Setup
+    public void setUp() {
+        // A context of its own, the global one is configured by logback-jmh.xml
+        loggerContext = new LoggerContext();
+        loggerContext.start();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(loggerContext);
+        fileAppender.setName("FILE");
+        fileAppender.setFile("target/jmh-request-logging.log");
+        fileAppender.setAppend(false);
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+
+        Appender<ILoggingEvent> appender = fileAppender;
+        if (mode.equals("ASYNC")) {
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(loggerContext);
+            asyncAppender.setName("ASYNC");
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.setNeverBlock(true);
+            asyncAppender.setIncludeCallerData(false);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            appender = asyncAppender;
+        }
+
+        ch.qos.logback.classic.Logger root = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(appender);
+
+        controllerLogger = loggerContext.getLogger(CommentController.class);
+        serviceLogger = loggerContext.getLogger("com.km.commentservice.service.CommentService");
+        repositoryLogger = loggerContext.getLogger("com.km.commentservice.dao.impl.CustomCommentRepositoryImpl");
+        summaryLogger = loggerContext.getLogger(RequestSummaryFilter.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        loggerContext.stop();
+    }
+
+    @Benchmark
+    public void logRequest() {
+        if (mode.equals("SAMPLED")) {
+            controllerLogger.debug("Fetching full comment tree for parent ID: {} with max depth: {}", parentId, maxDepth);
+            serviceLogger.debug("Fetching comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+            repositoryLogger.debug("Fetching comment tree by ID with path: {}, comment ID: {}, and max depth: {}",
+                    path, parentId, maxDepth);
+            serviceLogger.debug("Successfully fetched comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+            if (ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE) {
+                summaryLogger.info("method={} route={} status={} durationMs={}", "GET", "/v1/comment/{parentId}/fulltree",
+                        200, 3L);
+            }
+            return;
+        }
+        controllerLogger.info("Fetching full comment tree for parent ID: {} with max depth: {}", parentId, maxDepth);
+        serviceLogger.info("Fetching comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+        repositoryLogger.info("Fetching comment tree by ID with path: {}, comment ID: {}, and max depth: {}",
+                path, parentId, maxDepth);
+        serviceLogger.info("Successfully fetched comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+    }
+}
@@ -0,0 +1,42 @@
+package com.km.commentservice.dao.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building the tree query per request, as the repository did before the queries became constants,
+ * against reading the prebuilt constant. Compare gc.alloc.rate.norm of the two.
+ *
+ * @author karanm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBuildBenchmark {
+    private String whereClause =
+            "where c.path LIKE (CONCAT(:path,'%')) AND c.id != :commentId AND level <= :maxDepth GROUP BY c.id ORDER BY c.path";
+
+    private String prebuiltQuery = CustomCommentRepositoryImpl.buildQuery(whereClause);
+
+    @Benchmark
+    public String buildQueryPerCall() {
+        return CustomCommentRepositoryImpl.buildQuery(whereClause);
+    }
+
+    @Benchmark
+    public String prebuiltQuery() {
+        return prebuiltQuery;
+    }
+}
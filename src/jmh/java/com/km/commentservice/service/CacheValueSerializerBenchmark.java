@@ -0,0 +1,80 @@
+package com.km.commentservice.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.km.commentservice.benchmark.TreeShape;
+import com.km.commentservice.cache.CacheCompression;
+import com.km.commentservice.cache.CacheValueCodec;
+import com.km.commentservice.cache.CacheValueSerializer;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.dto.NestedCommentReply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encoding and decoding of cached trees with each codec and compression, what every Redis cache write and remote hit
+ * pays. The encoded size of the tree is logged once per trial.
+ *
+ * @author karanm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheValueSerializerBenchmark {
+    Logger logger = LoggerFactory.getLogger(CacheValueSerializerBenchmark.class);
+
+    @Param({"JDK", "SMILE"})
+    private CacheValueCodec codec;
+
+    @Param({"NONE", "LZ4"})
+    private CacheCompression compression;
+
+    @Param({"WIDE", "DEEP", "BALANCED"})
+    private TreeShape shape;
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private CacheValueSerializer serializer;
+
+    private NestedCommentReply tree;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        serializer = new CacheValueSerializer(codec, compression, 0, getClass().getClassLoader());
+        List<CommentReply> replies = shape.generate(size);
+        // The generated comments share one body instance, which Java serialization would write only once
+        replies.forEach(reply -> reply.setBody(reply.getId() + " " + reply.getBody()));
+        tree = new CommentService().createNestedCommentReply(replies);
+        encoded = serializer.serialize(tree);
+        logger.info("Encoded {} tree of {} comments with {} and {} compression: {} bytes", shape, size, codec, compression,
+                encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(tree);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+}
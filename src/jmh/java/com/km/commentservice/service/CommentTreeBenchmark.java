@@ -0,0 +1,52 @@
+package com.km.commentservice.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.km.commentservice.benchmark.TreeShape;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.dto.NestedCommentReply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Assembly of the flat query result into the nested reply, the CPU heavy part of the fulltree and nextlevel reads.
+ *
+ * @author karanm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentTreeBenchmark {
+    @Param({"WIDE", "DEEP", "BALANCED"})
+    private TreeShape shape;
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private final CommentService commentService = new CommentService();
+
+    private List<CommentReply> commentReplies;
+
+    @Setup
+    public void setUp() {
+        commentReplies = shape.generate(size);
+    }
+
+    @Benchmark
+    public NestedCommentReply assembleTree() {
+        return commentService.createNestedCommentReply(commentReplies);
+    }
+}
@@ -0,0 +1,115 @@
+package com.km.commentservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.km.commentservice.CommentserviceApplication;
+import com.km.commentservice.dto.CommentBatchItemRequest;
+import com.km.commentservice.dto.CommentBatchReply;
+import com.km.commentservice.dto.CommentPostRequest;
+import com.km.commentservice.dto.CommentReply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Comment posts through the service against an in-memory H2 database, one top level comment followed by nine replies.
+ * The batch benchmark posts the same ten comments as one batch, so one of its ops compares to ten of the single post.
+ * The absolute numbers say little about MySQL, the difference between two versions shows the statements saved per post.
+ *
+ * @author karanm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 8, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CommentWriteBenchmark {
+    private ConfigurableApplicationContext context;
+
+    private CommentService commentService;
+
+    private static final int BATCH_SIZE = 10;
+
+    private int posts;
+
+    private Integer rootId = 0;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(CommentserviceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                        "--spring.datasource.url=jdbc:h2:mem:writebenchmark;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.liquibase.enabled=false",
+                        "--spring.cache.type=none",
+                        "--logging.level.root=WARN");
+        commentService = context.getBean(CommentService.class);
+    }
+
+    // The in-memory tables would otherwise fill the heap, and the faster benchmark would pay for it in GC time
+    @Setup(Level.Iteration)
+    public void clearTables() {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("TRUNCATE TABLE comment_closure");
+        jdbcTemplate.execute("DELETE FROM comment");
+        posts = 0;
+        rootId = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CommentReply postComment() {
+        CommentPostRequest commentPostRequest = new CommentPostRequest();
+        commentPostRequest.setBody("benchmark comment");
+        commentPostRequest.setUser("km");
+        commentPostRequest.setParentId(posts++ % 10 == 0 ? 0 : rootId);
+        CommentReply commentReply = commentService.postComment(commentPostRequest);
+        if (commentReply.getParentId() == 0) {
+            rootId = commentReply.getId();
+        }
+        return commentReply;
+    }
+
+    @Benchmark
+    public CommentBatchReply postCommentBatch() {
+        List<CommentBatchItemRequest> requests = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            CommentBatchItemRequest request = new CommentBatchItemRequest();
+            request.setBody("benchmark comment");
+            request.setUser("km");
+            if (i == 0) {
+                request.setParentId(0);
+                request.setRef("root");
+            } else {
+                request.setParentRef("root");
+            }
+            requests.add(request);
+        }
+        return commentService.postComments(requests);
+    }
+}
@@ -0,0 +1,52 @@
+package com.km.commentservice.service;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.benchmark.TreeShape;
+import com.km.commentservice.dto.NestedCommentReply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Jackson serialization of assembled trees, what every uncached fulltree response pays after assembly.
+ *
+ * @author karanm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeSerializationBenchmark {
+    @Param({"WIDE", "DEEP", "BALANCED"})
+    private TreeShape shape;
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private NestedCommentReply tree;
+
+    @Setup
+    public void setUp() {
+        tree = new CommentService().createNestedCommentReply(shape.generate(size));
+    }
+
+    @Benchmark
+    public byte[] serializeTree() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(tree);
+    }
+}
@@ -10,6 +10,21 @@ public final class Constants {
     public static final String COMMENT_NOT_FOUND = "Comment not found or is deleted.";
     public static final String PARENT_DELETED = "Parent is deleted. Cannot reply.";
     public static final String PARENT_NOT_FOUND = "Parent comment not found.";
+    public static final String PATH_TOO_LONG = "Parent is nested too deeply. Cannot reply.";
     public static final String REACTION_NOT_FOUND = "Reaction not found for user.";
     public static final String COMMENT_DELETED_BY_USER  = "Deleted by user";
+    public static final String INVALID_CURSOR = "Cursor is invalid.";
+    public static final String BATCH_TOO_LARGE = "Too many comments in batch.";
+    public static final String DUPLICATE_REF = "Ref is already used by an earlier comment in batch.";
+    public static final String PARENT_ID_AND_REF = "Only one of parentId and parentRef can be set.";
+    public static final String PARENT_REQUIRED = "parentId or parentRef is required.";
+    public static final String PARENT_REF_NOT_FOUND = "Parent ref not found earlier in batch.";
+    public static final String PARENT_FAILED = "Parent comment in batch was not posted.";
+    public static final String REACTION_BATCH_TOO_LARGE = "Too many reactions in batch.";
+    public static final String REACTION_UNCHANGED = "Reaction is same as before.";
+    public static final String REACTION_SUPERSEDED = "Replaced by a later reaction of the same user in batch.";
+
+    public static final String FULL_TREE_CACHE = "fulltree";
+    public static final String NEXT_LEVEL_CACHE = "nextlevel";
+    public static final String REACTION_USERS_CACHE = "users";
 }
@@ -0,0 +1,11 @@
+package com.km.commentservice.cache;
+
+/**
+ * Compression of encoded cache values, see CacheValueSerializer.
+ *
+ * @author karanm
+ */
+public enum CacheCompression {
+    NONE,
+    LZ4
+}
@@ -0,0 +1,146 @@
+package com.km.commentservice.cache;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.km.commentservice.model.CommentPath;
+import com.km.commentservice.model.ReactionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static com.km.commentservice.Constants.FULL_TREE_CACHE;
+import static com.km.commentservice.Constants.NEXT_LEVEL_CACHE;
+import static com.km.commentservice.Constants.REACTION_USERS_CACHE;
+
+/**
+ * Evicts only the cache entries a change to a comment can affect.
+ * Cache keys of the tree endpoints start with the id of the comment the tree or level hangs off, so a change to a comment
+ * evicts every entry keyed by one of its ancestors (including the top level, id 0) and leaves other threads cached.
+ * Reaction user pages are keyed by comment id and reaction type.
+ * Within a transaction the eviction runs after commit, so a concurrent read cannot cache the state from before the change.
+ * With reads going to replicas it can, from a replica that has not applied the change yet, so the eviction is repeated
+ * once the replica lag {@code commentservice.datasource.replica.max-lag} has passed.
+ *
+ * @author karanm
+ */
+@Component
+public class CacheInvalidator {
+    Logger logger = LoggerFactory.getLogger(CacheInvalidator.class);
+
+    private static final String KEY_DELIMITER = "-";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ObjectProvider<TaskScheduler> taskSchedulerProvider;
+
+    @Value("${commentservice.datasource.replica.enabled:false}")
+    private boolean replicaReads = false;
+
+    @Value("${commentservice.datasource.replica.max-lag:2000}")
+    private long replicaMaxLag = 2000;
+
+    /**
+     * Evicts the tree and level entries containing the comment with the given path.
+     *
+     * @param path the path of the changed comment
+     */
+    public void evictCommentTree(String path) {
+        evictCommentTrees(Collections.singletonList(path));
+    }
+
+    /**
+     * Evicts the tree and level entries containing any of the comments with the given paths. Ancestors shared by
+     * several of the comments are evicted once.
+     *
+     * @param paths the paths of the changed comments
+     */
+    public void evictCommentTrees(Collection<String> paths) {
+        Set<Integer> ancestorIds = new LinkedHashSet<>();
+        ancestorIds.add(0);
+        for (String path : paths) {
+            ancestorIds.addAll(CommentPath.ancestorIds(path));
+        }
+        afterCommit(() -> {
+            logger.debug("Evicting tree caches for ancestors: {}", ancestorIds);
+            for (Integer ancestorId : ancestorIds) {
+                evictByPrefix(FULL_TREE_CACHE, ancestorId + KEY_DELIMITER);
+                evictByPrefix(NEXT_LEVEL_CACHE, ancestorId + KEY_DELIMITER);
+            }
+        });
+    }
+
+    /**
+     * Evicts the user pages of the given reaction types on a comment.
+     *
+     * @param commentId the id of the comment
+     * @param reactionTypes the reaction types whose users changed
+     */
+    public void evictReactionUsers(Integer commentId, ReactionType... reactionTypes) {
+        List<ReactionType> types = List.of(reactionTypes);
+        afterCommit(() -> {
+            logger.debug("Evicting reaction user caches for comment ID: {} and reaction types: {}", commentId, types);
+            for (ReactionType reactionType : types) {
+                evictByPrefix(REACTION_USERS_CACHE, commentId + KEY_DELIMITER + reactionType + KEY_DELIMITER);
+            }
+        });
+    }
+
+    private void afterCommit(Runnable eviction) {
+        Runnable evictions = replicaReads ? () -> {
+            eviction.run();
+            evictAgainAfterReplicaLag(eviction);
+        } : eviction;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictions.run();
+                }
+            });
+        } else {
+            evictions.run();
+        }
+    }
+
+    private void evictAgainAfterReplicaLag(Runnable eviction) {
+        TaskScheduler taskScheduler = taskSchedulerProvider.getIfAvailable();
+        if (taskScheduler == null) {
+            return;
+        }
+        taskScheduler.schedule(eviction, Instant.now().plusMillis(replicaMaxLag));
+    }
+
+    private void evictByPrefix(String cacheName, String keyPrefix) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return;
+        }
+        if (cache instanceof TwoLevelCache twoLevelCache) {
+            twoLevelCache.evictByPrefix(keyPrefix);
+        } else if (cache instanceof RedisCache redisCache) {
+            redisCache.clear(keyPrefix + "*");
+        } else if (cache instanceof ConcurrentMapCache concurrentMapCache) {
+            concurrentMapCache.getNativeCache().keySet().removeIf(key -> key.toString().startsWith(keyPrefix));
+        } else {
+            // No way to find the keys of an unknown cache type, fall back to clearing it
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.km.commentservice.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.km.commentservice.exception.CommentServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads a missing cache entry once, however many requests miss it at the same time. The first request to miss a key
+ * loads and caches it, requests missing the same key meanwhile wait for its result instead of running the same query.
+ * The loader re-reads the cache first, so a request that missed just before another one finished loading gets the
+ * cached value.
+ * <p>
+ * With {@code commentservice.cache.single-flight.distributed} on, loads are also coordinated across nodes through a Redis
+ * lock per key. A node that does not get the lock polls the cache until the holder has put the value, and loads it
+ * itself when the lock expires first or Redis cannot be reached.
+ * <p>
+ * A request joining a load that started before a write can get the state from before the write, as it could from the
+ * cache entry the write evicts.
+ *
+ * @author karanm
+ */
+@Component
+public class CacheLoadCoalescer {
+    Logger logger = LoggerFactory.getLogger(CacheLoadCoalescer.class);
+
+    private static final String LOCK_KEY_PREFIX = "commentservice:cache-load:";
+
+    // Deletes the lock only while it still holds our token, so a load that outlived the lock cannot release another's
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Value("${commentservice.cache.single-flight.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${commentservice.cache.single-flight.distributed:false}")
+    private boolean distributed = false;
+
+    @Value("${commentservice.cache.single-flight.lock-timeout:10000}")
+    private long lockTimeout = 10000;
+
+    @Value("${commentservice.cache.single-flight.poll-interval:50}")
+    private long pollInterval = 50;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the value of a key that missed the cache and puts it into the cache, or waits for the load of another request.
+     *
+     * @param cache the cache that missed, null when there is none
+     * @param key the key that missed
+     * @param loader loads the value
+     * @return the value
+     */
+    public Object load(Cache cache, String key, Supplier<?> loader) {
+        if (cache == null) {
+            return loader.get();
+        }
+        if (!enabled) {
+            return loadAndPut(cache, key, loader);
+        }
+
+        String flightKey = cache.getName() + ":" + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            Object value = cachedValue(cache, key);
+            if (value == null) {
+                value = distributed ? loadWithLock(cache, key, loader) : loadAndPut(cache, key, loader);
+            }
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    private Object loadWithLock(Cache cache, String key, Supplier<?> loader) {
+        StringRedisTemplate redisTemplate = redisTemplateProvider.getIfAvailable();
+        if (redisTemplate == null) {
+            return loadAndPut(cache, key, loader);
+        }
+        String lockKey = LOCK_KEY_PREFIX + cache.getName() + ":" + key;
+        String token = UUID.randomUUID().toString();
+        boolean locked;
+        try {
+            locked = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, Duration.ofMillis(lockTimeout)));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to lock load of cache: {} key: {}, loading without the lock: {}", cache.getName(), key,
+                    e.getMessage());
+            return loadAndPut(cache, key, loader);
+        }
+
+        if (locked) {
+            try {
+                return loadAndPut(cache, key, loader);
+            } finally {
+                release(redisTemplate, lockKey, token);
+            }
+        }
+
+        long deadline = System.nanoTime() + Duration.ofMillis(lockTimeout).toNanos();
+        while (System.nanoTime() < deadline) {
+            sleep(pollInterval);
+            Object value = cachedValue(cache, key);
+            if (value != null) {
+                return value;
+            }
+        }
+        logger.warn("Load of cache: {} key: {} by another node did not finish in {} ms, loading it here", cache.getName(),
+                key, lockTimeout);
+        return loadAndPut(cache, key, loader);
+    }
+
+    private void release(StringRedisTemplate redisTemplate, String lockKey, String token) {
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), token);
+        } catch (RuntimeException e) {
+            // The lock expires by itself
+            logger.warn("Failed to release cache load lock: {}: {}", lockKey, e.getMessage());
+        }
+    }
+
+    private static Object loadAndPut(Cache cache, String key, Supplier<?> loader) {
+        Object value = loader.get();
+        cache.put(key, value);
+        return value;
+    }
+
+    private static Object cachedValue(Cache cache, String key) {
+        Cache.ValueWrapper cached = cache.get(key);
+        return cached != null ? cached.get() : null;
+    }
+
+    private static Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // Waiting requests fail the way the loading one did
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommentServiceException("Interrupted while waiting for a cache load", e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.km.commentservice.cache;
+
+/**
+ * Binary formats the cached values can be stored in, see CacheValueSerializer.
+ *
+ * @author karanm
+ */
+public enum CacheValueCodec {
+    // Java serialization, works for any Serializable value
+    JDK,
+    // Jackson's binary JSON, much smaller and faster for the reply DTOs and tolerant of added or removed fields
+    SMILE
+}
@@ -0,0 +1,174 @@
+package com.km.commentservice.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.km.commentservice.dto.NestedCommentReply;
+import com.km.commentservice.dto.ReactionReply;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Serializes cache values for Redis with the configured codec, compressing values of at least the compression threshold.
+ * <p>
+ * An encoded value starts with a header: a marker byte, the codec and compression flag, the type of the value and, for
+ * compressed values, the length before compression. Values are read by their own header rather than by the current
+ * configuration, so nodes with different settings share the cache. Values written with plain Java serialization before
+ * the header existed are still read. Only the reply types the caches hold are written with Smile, anything else falls
+ * back to Java serialization.
+ * <p>
+ * A value that cannot be read, e.g. because its class changed incompatibly, is treated as a cache miss and replaced.
+ *
+ * @author karanm
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+    Logger logger = LoggerFactory.getLogger(CacheValueSerializer.class);
+
+    private static final byte MARKER = (byte) 0xC5;
+    // First byte of every Java serialization stream
+    private static final byte JDK_STREAM_MAGIC = (byte) 0xAC;
+
+    private static final int CODEC_MASK = 0x0F;
+    private static final int LZ4_FLAG = 0x80;
+    private static final int JDK_CODEC_ID = 1;
+    private static final int SMILE_CODEC_ID = 2;
+
+    private static final int HEADER_LENGTH = 3;
+    private static final int COMPRESSED_HEADER_LENGTH = HEADER_LENGTH + Integer.BYTES;
+
+    // Position of a type is its id in the header, only append to keep ids of values in Redis stable
+    private static final List<Class<?>> SMILE_TYPES = List.of(NestedCommentReply.class, ReactionReply.class);
+    private static final int UNTYPED = 0xFF;
+
+    private final CacheValueCodec codec;
+    private final CacheCompression compression;
+    private final int compressionThreshold;
+
+    private final JdkSerializationRedisSerializer jdkSerializer;
+    private final ObjectMapper smileMapper;
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    public CacheValueSerializer(CacheValueCodec codec, CacheCompression compression, int compressionThreshold,
+                                ClassLoader classLoader) {
+        this.codec = codec;
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+        this.jdkSerializer = new JdkSerializationRedisSerializer(classLoader);
+        this.smileMapper = new ObjectMapper(SmileFactory.builder().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES).build())
+                .setAnnotationIntrospector(new TimestampAnnotationIntrospector())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        int typeId = SMILE_TYPES.indexOf(value.getClass());
+        boolean smile = codec == CacheValueCodec.SMILE && typeId >= 0;
+        byte[] payload;
+        if (smile) {
+            try {
+                payload = smileMapper.writeValueAsBytes(value);
+            } catch (IOException e) {
+                throw new SerializationException("Could not write cache value of type " + value.getClass().getName(), e);
+            }
+        } else {
+            payload = jdkSerializer.serialize(value);
+        }
+
+        int codecId = smile ? SMILE_CODEC_ID : JDK_CODEC_ID;
+        int type = smile ? typeId : UNTYPED;
+        if (compression == CacheCompression.LZ4 && payload.length >= compressionThreshold) {
+            byte[] encoded = new byte[COMPRESSED_HEADER_LENGTH + compressor.maxCompressedLength(payload.length)];
+            int compressedLength = compressor.compress(payload, 0, payload.length, encoded, COMPRESSED_HEADER_LENGTH);
+            writeHeader(encoded, codecId | LZ4_FLAG, type);
+            ByteBuffer.wrap(encoded, HEADER_LENGTH, Integer.BYTES).putInt(payload.length);
+            return Arrays.copyOf(encoded, COMPRESSED_HEADER_LENGTH + compressedLength);
+        }
+
+        byte[] encoded = new byte[HEADER_LENGTH + payload.length];
+        writeHeader(encoded, codecId, type);
+        System.arraycopy(payload, 0, encoded, HEADER_LENGTH, payload.length);
+        return encoded;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            if (bytes[0] == JDK_STREAM_MAGIC) {
+                return jdkSerializer.deserialize(bytes);
+            }
+            if (bytes[0] != MARKER || bytes.length < HEADER_LENGTH) {
+                logger.warn("Ignoring cache value with unknown encoding");
+                return null;
+            }
+
+            int flags = bytes[1] & 0xFF;
+            int type = bytes[2] & 0xFF;
+            byte[] payload;
+            int offset;
+            int length;
+            if ((flags & LZ4_FLAG) != 0) {
+                int originalLength = ByteBuffer.wrap(bytes, HEADER_LENGTH, Integer.BYTES).getInt();
+                payload = new byte[originalLength];
+                decompressor.decompress(bytes, COMPRESSED_HEADER_LENGTH, bytes.length - COMPRESSED_HEADER_LENGTH, payload, 0);
+                offset = 0;
+                length = originalLength;
+            } else {
+                payload = bytes;
+                offset = HEADER_LENGTH;
+                length = bytes.length - HEADER_LENGTH;
+            }
+
+            return switch (flags & CODEC_MASK) {
+                case SMILE_CODEC_ID -> smileMapper.readValue(payload, offset, length, SMILE_TYPES.get(type));
+                case JDK_CODEC_ID -> jdkSerializer.deserialize(Arrays.copyOfRange(payload, offset, offset + length));
+                default -> {
+                    logger.warn("Ignoring cache value with unknown codec: {}", flags & CODEC_MASK);
+                    yield null;
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            // Read as a miss, the value is loaded again and overwrites the unreadable one
+            logger.warn("Could not read cache value, treating it as a miss", e);
+            return null;
+        }
+    }
+
+    private static void writeHeader(byte[] encoded, int flags, int type) {
+        encoded[0] = MARKER;
+        encoded[1] = (byte) flags;
+        encoded[2] = (byte) type;
+    }
+
+    /**
+     * Writes dates as epoch millis instead of the formatted strings of the API, which are longer and drop the millis.
+     */
+    private static final class TimestampAnnotationIntrospector extends JacksonAnnotationIntrospector {
+        @Override
+        public JsonFormat.Value findFormat(Annotated annotated) {
+            if (Date.class.isAssignableFrom(annotated.getRawType())) {
+                return JsonFormat.Value.empty();
+            }
+            return super.findFormat(annotated);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.km.commentservice.cache;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A response body as written to the client, with the ETag of its content.
+ *
+ * @author karanm
+ */
+@Getter
+@AllArgsConstructor
+public class CachedJsonResponse implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 4190735563380923512L;
+
+    private final byte[] body;
+
+    private final String etag;
+}
@@ -0,0 +1,86 @@
+package com.km.commentservice.cache;
+
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.exception.CommentServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Caches the responses of the tree endpoints, by default as the JSON bytes sent to the client so a cache hit skips
+ * serialization. The response carries the ETag of the bytes and Spring MVC answers a GET whose If-None-Match matches it
+ * with a 304 and no body.
+ * <p>
+ * With {@code commentservice.cache.json-bytes.enabled} off the reply objects are cached and serialized on every request.
+ * JSON entries get their own keys, still starting with the id the tree hangs off so CacheInvalidator evicts them, and
+ * nodes running either setting can share the caches.
+ *
+ * @author karanm
+ */
+@Component
+public class JsonResponseCache {
+    Logger logger = LoggerFactory.getLogger(JsonResponseCache.class);
+
+    private static final String JSON_KEY_SUFFIX = "-json";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CacheLoadCoalescer cacheLoadCoalescer;
+
+    @Value("${commentservice.cache.json-bytes.enabled:true}")
+    private boolean jsonBytesEnabled = true;
+
+    /**
+     * Returns the cached response for the key, loading and caching it on a miss. Concurrent misses of the same key share
+     * one load, see CacheLoadCoalescer.
+     *
+     * @param cacheName the name of the cache
+     * @param key the key of the response
+     * @param loader loads the reply on a miss
+     * @return the response
+     */
+    public ResponseEntity<?> get(String cacheName, String key, Supplier<?> loader) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (!jsonBytesEnabled) {
+            return ResponseEntity.ok(getOrLoad(cache, key, loader));
+        }
+        CachedJsonResponse response = (CachedJsonResponse) getOrLoad(cache, key + JSON_KEY_SUFFIX, () -> toJson(loader.get()));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(response.getEtag())
+                .body(response.getBody());
+    }
+
+    private Object getOrLoad(Cache cache, String key, Supplier<?> loader) {
+        Cache.ValueWrapper cached = cache != null ? cache.get(key) : null;
+        if (cached != null && cached.get() != null) {
+            return cached.get();
+        }
+        return cacheLoadCoalescer.load(cache, key, loader);
+    }
+
+    private CachedJsonResponse toJson(Object reply) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(reply);
+            return new CachedJsonResponse(body, DigestUtils.md5DigestAsHex(body));
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize response of type: {}", reply.getClass().getName(), e);
+            throw new CommentServiceException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.km.commentservice.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+
+/**
+ * A cache that keeps recently read entries in process in front of a Redis cache. A hit in the local tier costs neither a
+ * network round trip nor deserializing the value; a miss falls through to Redis and keeps what it finds locally.
+ * <p>
+ * Writes and evictions go to Redis first. Evictions then drop the entry from the local tier and are published to the
+ * other nodes, which drop it from theirs. A read that fell through to Redis while an eviction ran could put the evicted
+ * value back into the local tier, so every local eviction bumps a counter and such a read drops what it put when the
+ * counter moved. Published evictions are not delivered to a node that is disconnected from Redis at the time, the local
+ * tier therefore also expires entries after a fixed time, and is bypassed until the node is subscribed to evictions.
+ * <p>
+ * Values in the local tier are shared between all readers on the node and must not be changed. Keys are strings, the
+ * only form in which an eviction can be sent to other nodes.
+ *
+ * @author karanm
+ */
+public class TwoLevelCache implements Cache {
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> localCache;
+    private final RedisCache remoteCache;
+    private final InvalidationChannel channel;
+
+    // Bumped after every eviction from Redis and before the local tier is changed to match
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> localCache,
+                         RedisCache remoteCache, InvalidationChannel channel) {
+        this.name = name;
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+        this.channel = channel;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        boolean useLocal = channel.isSubscribed();
+        if (useLocal) {
+            ValueWrapper wrapper = localCache.getIfPresent(key);
+            if (wrapper != null) {
+                return wrapper;
+            }
+        }
+
+        long seenInvalidations = invalidations.get();
+        ValueWrapper wrapper = remoteCache.get(key);
+        if (wrapper == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        if (useLocal) {
+            localCache.put(key, wrapper);
+            if (invalidations.get() != seenInvalidations) {
+                // An eviction ran while Redis was read, the value may be the evicted one
+                localCache.invalidate(key);
+            }
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remoteCache.put(key, value);
+        if (channel.isSubscribed()) {
+            localCache.put(key, new SimpleValueWrapper(value));
+        }
+        puts.increment();
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remoteCache.putIfAbsent(key, value);
+        if (existing == null) {
+            puts.increment();
+        }
+        // Read from Redis on the next get, whichever value won
+        localCache.invalidate(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remoteCache.evict(key);
+        invalidateLocal(Invalidation.KEY, key.toString());
+        channel.publish(name, Invalidation.KEY, key.toString());
+    }
+
+    @Override
+    public void clear() {
+        remoteCache.clear();
+        invalidateLocal(Invalidation.ALL, null);
+        channel.publish(name, Invalidation.ALL, null);
+    }
+
+    /**
+     * Evicts all entries whose key starts with the given prefix, on this node and all others.
+     *
+     * @param keyPrefix the prefix of the keys to evict
+     */
+    public void evictByPrefix(String keyPrefix) {
+        remoteCache.clear(keyPrefix + "*");
+        invalidateLocal(Invalidation.PREFIX, keyPrefix);
+        channel.publish(name, Invalidation.PREFIX, keyPrefix);
+    }
+
+    /**
+     * Drops entries from the local tier only, for evictions that already reached Redis.
+     *
+     * @param invalidation what to drop
+     * @param argument the key or key prefix, null when dropping all entries
+     */
+    public void invalidateLocal(Invalidation invalidation, String argument) {
+        invalidations.incrementAndGet();
+        switch (invalidation) {
+            case KEY -> localCache.invalidate(argument);
+            case PREFIX -> localCache.asMap().keySet().removeIf(key -> key.toString().startsWith(argument));
+            case ALL -> localCache.invalidateAll();
+        }
+    }
+
+    long localHitCount() {
+        return localCache.stats().hitCount();
+    }
+
+    long localMissCount() {
+        return localCache.stats().missCount();
+    }
+
+    long localEvictionCount() {
+        return localCache.stats().evictionCount();
+    }
+
+    long localSize() {
+        return localCache.estimatedSize();
+    }
+
+    long remoteHitCount() {
+        return remoteHits.sum();
+    }
+
+    long remoteMissCount() {
+        return remoteMisses.sum();
+    }
+
+    long putCount() {
+        return puts.sum();
+    }
+
+    public enum Invalidation {
+        KEY, PREFIX, ALL
+    }
+
+    /**
+     * Carries evictions between the local tiers of all nodes.
+     */
+    public interface InvalidationChannel {
+        void publish(String cacheName, Invalidation invalidation, String argument);
+
+        /**
+         * @return whether this node receives the evictions of the other nodes
+         */
+        boolean isSubscribed();
+    }
+}
@@ -0,0 +1,173 @@
+package com.km.commentservice.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Creates a TwoLevelCache over the Redis cache of the same name for every cache, and carries evictions between the
+ * local tiers of all nodes over a Redis pub/sub channel. A message names the node that sent it, the cache, what to
+ * evict and the key or key prefix; a node ignores its own messages as it evicted locally before sending them.
+ * <p>
+ * The channel is subscribed in the background once the application starts, and again after a failed attempt, so a node
+ * still starts while Redis is down. The local tiers are bypassed until the subscription is in place.
+ *
+ * @author karanm
+ */
+public class TwoLevelCacheManager extends AbstractCacheManager
+        implements MessageListener, SmartLifecycle, TwoLevelCache.InvalidationChannel {
+    Logger logger = LoggerFactory.getLogger(TwoLevelCacheManager.class);
+
+    private static final String MESSAGE_DELIMITER = "|";
+
+    private static final long SUBSCRIBE_RETRY_MILLIS = 5000;
+
+    private final RedisCacheManager redisCacheManager;
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final Collection<String> initialCacheNames;
+    private final long localMaxSize;
+    private final Duration localExpireAfterWrite;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private RedisMessageListenerContainer listenerContainer;
+    private Thread subscribeThread;
+    private volatile boolean running;
+    private volatile boolean subscribed;
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, RedisConnectionFactory connectionFactory,
+                                StringRedisTemplate redisTemplate, String channel, Collection<String> initialCacheNames,
+                                long localMaxSize, Duration localExpireAfterWrite) {
+        this.redisCacheManager = redisCacheManager;
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        this.initialCacheNames = List.copyOf(initialCacheNames);
+        this.localMaxSize = localMaxSize;
+        this.localExpireAfterWrite = localExpireAfterWrite;
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        return initialCacheNames.stream().map(this::createCache).toList();
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        return createCache(name);
+    }
+
+    private TwoLevelCache createCache(String name) {
+        RedisCache remoteCache = (RedisCache) redisCacheManager.getCache(name);
+        // Caffeine evicts by W-TinyLFU, so a burst of one-off reads does not push out the hot trees
+        com.github.benmanes.caffeine.cache.Cache<Object, Cache.ValueWrapper> localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localExpireAfterWrite)
+                .recordStats()
+                .build();
+        return new TwoLevelCache(name, localCache, remoteCache, this);
+    }
+
+    @Override
+    public void publish(String cacheName, TwoLevelCache.Invalidation invalidation, String argument) {
+        String message = String.join(MESSAGE_DELIMITER, nodeId, cacheName, invalidation.name(), argument != null ? argument : "");
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (RuntimeException e) {
+            // The other nodes drop the entry when it expires from their local tier
+            logger.error("Failed to publish eviction from cache: {} of: {}", cacheName, argument, e);
+        }
+    }
+
+    @Override
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\" + MESSAGE_DELIMITER, 4);
+        if (parts.length != 4 || nodeId.equals(parts[0])) {
+            return;
+        }
+        Cache cache = lookupCache(parts[1]);
+        if (cache instanceof TwoLevelCache twoLevelCache) {
+            TwoLevelCache.Invalidation invalidation = TwoLevelCache.Invalidation.valueOf(parts[2]);
+            logger.debug("Evicting {} {} from local cache: {} for another node", invalidation, parts[3], parts[1]);
+            twoLevelCache.invalidateLocal(invalidation, parts[3]);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        listenerContainer.afterPropertiesSet();
+
+        subscribeThread = new Thread(this::subscribe, "cache-eviction-subscriber");
+        subscribeThread.setDaemon(true);
+        subscribeThread.start();
+    }
+
+    private void subscribe() {
+        while (running) {
+            try {
+                listenerContainer.start();
+                subscribed = true;
+                logger.info("Subscribed to cache evictions on channel: {}", channel);
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to subscribe to cache evictions on channel: {}, retrying in {} ms: {}", channel,
+                        SUBSCRIBE_RETRY_MILLIS, e.getMessage());
+            }
+            try {
+                Thread.sleep(SUBSCRIBE_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        subscribed = false;
+        if (subscribeThread != null) {
+            subscribeThread.interrupt();
+        }
+        if (listenerContainer != null) {
+            try {
+                listenerContainer.destroy();
+            } catch (Exception e) {
+                logger.warn("Failed to stop cache eviction listener", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,84 @@
+package com.km.commentservice.cache;
+
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+
+/**
+ * Binds the metrics of a TwoLevelCache when Actuator registers the caches. Besides the common cache metrics, which count
+ * a get as a hit when either tier had the entry, {@code cache.tier.gets} counts the hits and misses of each tier. Only
+ * local misses reach Redis, so remote gets add up to the local misses.
+ *
+ * @author karanm
+ */
+public class TwoLevelCacheMeterBinderProvider implements CacheMeterBinderProvider<TwoLevelCache> {
+    @Override
+    public MeterBinder getMeterBinder(TwoLevelCache cache, Iterable<Tag> tags) {
+        return new TwoLevelCacheMetrics(cache, tags);
+    }
+
+    private static final class TwoLevelCacheMetrics extends CacheMeterBinder<TwoLevelCache> {
+        private static final String TIER_GETS = "cache.tier.gets";
+
+        TwoLevelCacheMetrics(TwoLevelCache cache, Iterable<Tag> tags) {
+            super(cache, cache.getName(), tags);
+        }
+
+        @Override
+        protected Long size() {
+            TwoLevelCache cache = getCache();
+            return cache != null ? cache.localSize() : null;
+        }
+
+        @Override
+        protected long hitCount() {
+            TwoLevelCache cache = getCache();
+            return cache != null ? cache.localHitCount() + cache.remoteHitCount() : 0L;
+        }
+
+        @Override
+        protected Long missCount() {
+            TwoLevelCache cache = getCache();
+            return cache != null ? cache.remoteMissCount() : null;
+        }
+
+        @Override
+        protected Long evictionCount() {
+            TwoLevelCache cache = getCache();
+            return cache != null ? cache.localEvictionCount() : null;
+        }
+
+        @Override
+        protected long putCount() {
+            TwoLevelCache cache = getCache();
+            return cache != null ? cache.putCount() : 0L;
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            TwoLevelCache cache = getCache();
+            tierGets(registry, cache, "local", "hit", TwoLevelCache::localHitCount);
+            tierGets(registry, cache, "local", "miss", TwoLevelCache::localMissCount);
+            tierGets(registry, cache, "remote", "hit", TwoLevelCache::remoteHitCount);
+            tierGets(registry, cache, "remote", "miss", TwoLevelCache::remoteMissCount);
+            Gauge.builder("cache.tier.size", cache, TwoLevelCache::localSize)
+                    .tags(getTagsWithCacheName()).tag("tier", "local")
+                    .description("The number of entries in the local tier")
+                    .register(registry);
+        }
+
+        private void tierGets(MeterRegistry registry, TwoLevelCache cache, String tier, String result,
+                              ToDoubleFunction<TwoLevelCache> count) {
+            FunctionCounter.builder(TIER_GETS, cache, count)
+                    .tags(getTagsWithCacheName()).tag("tier", tier).tag("result", result)
+                    .description("The number of gets answered by a tier of the cache")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.km.commentservice.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.km.commentservice.cache.CacheCompression;
+import com.km.commentservice.cache.CacheValueCodec;
+import com.km.commentservice.cache.CacheValueSerializer;
+import com.km.commentservice.cache.TwoLevelCacheManager;
+import com.km.commentservice.cache.TwoLevelCacheMeterBinderProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import static com.km.commentservice.Constants.FULL_TREE_CACHE;
+import static com.km.commentservice.Constants.NEXT_LEVEL_CACHE;
+import static com.km.commentservice.Constants.REACTION_USERS_CACHE;
+
+/**
+ * @author karanm
+ */
+@Configuration
+public class CacheConfig {
+    private static final int EVICTION_SCAN_BATCH_SIZE = 1000;
+
+    /**
+     * Key pattern evictions go through SCAN instead of the default KEYS, which blocks Redis while it walks the keyspace.
+     */
+    @Bean
+    public RedisCacheManagerBuilderCustomizer scanningRedisCacheWriterCustomizer(RedisConnectionFactory connectionFactory) {
+        return builder -> builder.cacheWriter(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory,
+                BatchStrategies.scan(EVICTION_SCAN_BATCH_SIZE)));
+    }
+
+    /**
+     * Cache values are written with the codec and compression of {@code commentservice.cache.codec} and
+     * {@code commentservice.cache.compression}, see CacheValueSerializer.
+     */
+    @Bean
+    public RedisCacheManagerBuilderCustomizer cacheValueSerializerCustomizer(
+            @Value("${commentservice.cache.codec:SMILE}") CacheValueCodec codec,
+            @Value("${commentservice.cache.compression:LZ4}") CacheCompression compression,
+            @Value("${commentservice.cache.compression-threshold:4096}") int compressionThreshold) {
+        CacheValueSerializer serializer = new CacheValueSerializer(codec, compression, compressionThreshold,
+                getClass().getClassLoader());
+        return builder -> builder.cacheDefaults(builder.cacheDefaults()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer)));
+    }
+
+    /**
+     * Puts an in-process tier in front of the Redis caches, enabled with {@code commentservice.cache.near.enabled}.
+     * Replaces the cache manager Spring Boot would create, so it only applies while the cache type is Redis.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "spring.cache.type", havingValue = "redis", matchIfMissing = true)
+    static class NearCacheConfig {
+        @Value("${commentservice.cache.near.max-size:10000}")
+        private long maxSize = 10000;
+
+        @Value("${commentservice.cache.near.expire-after-write:60000}")
+        private long expireAfterWrite = 60000;
+
+        @Value("${commentservice.cache.near.channel:commentservice:cache-evictions}")
+        private String channel = "commentservice:cache-evictions";
+
+        @Bean
+        @ConditionalOnProperty(name = "commentservice.cache.near.enabled", havingValue = "true", matchIfMissing = true)
+        public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate,
+                                                 ObjectProvider<RedisCacheManagerBuilderCustomizer> customizers) {
+            // The Redis tier is built the way Spring Boot builds its Redis cache manager
+            RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory)
+                    .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig(getClass().getClassLoader()));
+            customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+            RedisCacheManager redisCacheManager = builder.build();
+            redisCacheManager.afterPropertiesSet();
+
+            return new TwoLevelCacheManager(redisCacheManager, connectionFactory, redisTemplate, channel,
+                    List.of(FULL_TREE_CACHE, NEXT_LEVEL_CACHE, REACTION_USERS_CACHE), maxSize, Duration.ofMillis(expireAfterWrite));
+        }
+
+        @Bean
+        public TwoLevelCacheMeterBinderProvider twoLevelCacheMeterBinderProvider() {
+            return new TwoLevelCacheMeterBinderProvider();
+        }
+    }
+}
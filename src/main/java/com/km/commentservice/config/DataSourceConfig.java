@@ -0,0 +1,62 @@
+package com.km.commentservice.config;
+
+import javax.sql.DataSource;
+
+import com.km.commentservice.datasource.ReadWriteRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Splits reads from writes when {@code commentservice.datasource.replica.enabled} is on. The primary pool is configured
+ * by the {@code spring.datasource} properties as before, the replica pool by {@code commentservice.datasource.replica},
+ * and JPA gets a ReadWriteRoutingDataSource over the two in place of the data source Spring Boot would create.
+ *
+ * @author karanm
+ */
+@Configuration
+@ConditionalOnProperty(name = "commentservice.datasource.replica.enabled", havingValue = "true")
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("commentservice-primary");
+        return dataSource;
+    }
+
+    /**
+     * The user and password of the primary are used unless the replica sets its own.
+     */
+    @Bean
+    @ConfigurationProperties("commentservice.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${commentservice.datasource.replica.url}") String url,
+                                              @Value("${commentservice.datasource.replica.username:}") String username,
+                                              @Value("${commentservice.datasource.replica.password:}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create(getClass().getClassLoader()).type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username.isEmpty() ? properties.determineUsername() : username)
+                .password(password.isEmpty() ? properties.determinePassword() : password)
+                .build();
+        dataSource.setPoolName("commentservice-replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource) {
+        return ReadWriteRoutingDataSource.lazy(primaryDataSource, replicaDataSource);
+    }
+}
@@ -0,0 +1,21 @@
+package com.km.commentservice.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author karanm
+ */
+@Configuration
+public class MetricsConfig {
+    /**
+     * Records a timer for every public method of a class annotated with {@code @Timed}, tagged with the class and method
+     * name. Repository methods are timed by Spring Boot as {@code spring.data.repository.invocations}.
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -1,6 +1,7 @@
 package com.km.commentservice.controller;
 
 import com.km.commentservice.exception.ApiExceptionResponse;
+import com.km.commentservice.exception.BadRequestException;
 import com.km.commentservice.exception.CommentServiceException;
 import com.km.commentservice.exception.OperationNotAllowedException;
 import com.km.commentservice.exception.ResourceNotFoundException;
@@ -60,6 +61,14 @@ public class ApiControllerAdvice {
         return preExceptionHandler(ex, "Validation of params failed");
     }
 
+    @ExceptionHandler({BadRequestException.class})
+    @ResponseBody
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ApiExceptionResponse handleBadRequestException(BadRequestException ex,
+                                                          HttpServletRequest req, HttpServletResponse response) {
+        return preExceptionHandler(ex);
+    }
+
     @ExceptionHandler({OperationNotAllowedException.class})
     @ResponseBody
     @ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
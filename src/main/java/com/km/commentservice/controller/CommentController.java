@@ -1,17 +1,20 @@
 package com.km.commentservice.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.cache.JsonResponseCache;
+import com.km.commentservice.dto.CommentBatchPostRequest;
+import com.km.commentservice.dto.CommentBatchReply;
 import com.km.commentservice.dto.CommentPutRequest;
 import com.km.commentservice.dto.CommentReply;
-import com.km.commentservice.dto.NestedCommentReply;
 import com.km.commentservice.dto.CommentPostRequest;
 import com.km.commentservice.service.CommentService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -21,6 +24,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import static com.km.commentservice.Constants.FULL_TREE_CACHE;
+import static com.km.commentservice.Constants.NEXT_LEVEL_CACHE;
 
 /**
  * @author karanm
@@ -33,47 +40,71 @@ public class CommentController {
     @Autowired
     private CommentService commentService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JsonResponseCache jsonResponseCache;
+
     @GetMapping(value = "/{commentId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public CommentReply getCommentById(@PathVariable("commentId") Integer commentId) {
-        logger.info("Fetching comment for ID: {}", commentId);
+        logger.debug("Fetching comment for ID: {}", commentId);
         return commentService.getCommentById(commentId);
     }
 
-    @Cacheable(value="fulltree", key="#parentId.toString() + '-' + #maxDepth.toString()")
     @GetMapping(value = "/{parentId}/fulltree", produces = MediaType.APPLICATION_JSON_VALUE)
-    public NestedCommentReply getCommentTreeByParentId(@PathVariable("parentId") Integer parentId,
-                                                       @RequestParam(defaultValue = "5") Integer maxDepth) {
-        logger.info("Fetching full comment tree for parent ID: {} with max depth: {}", parentId, maxDepth);
-        return commentService.getCommentTreeById(parentId, maxDepth);
+    public ResponseEntity<?> getCommentTreeByParentId(@PathVariable("parentId") Integer parentId,
+                                                      @RequestParam(defaultValue = "5") Integer maxDepth) {
+        logger.debug("Fetching full comment tree for parent ID: {} with max depth: {}", parentId, maxDepth);
+        return jsonResponseCache.get(FULL_TREE_CACHE, parentId + "-" + maxDepth,
+                () -> commentService.getCommentTreeById(parentId, maxDepth));
+    }
+
+    @GetMapping(value = "/{parentId}/fulltree/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCommentTreeByParentId(@PathVariable("parentId") Integer parentId,
+                                                                             @RequestParam(defaultValue = "5") Integer maxDepth) {
+        logger.debug("Streaming full comment tree for parent ID: {} with max depth: {}", parentId, maxDepth);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                commentService.streamCommentTreeById(parentId, maxDepth, generator);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
-    @Cacheable(value="nextlevel", key="#parentId.toString() + '-' + #pageNo.toString() + '-' + #pageSize.toString()")
     @GetMapping(value = "/{parentId}/nextlevel", produces = {"application/json"})
-    public NestedCommentReply getCommentsAtLevel(@PathVariable("parentId") Integer parentId,
-                                                 @RequestParam(defaultValue = "0") Integer pageNo,
-                                                 @RequestParam(defaultValue = "10") Integer pageSize) {
-        logger.info("Fetching comments at level for parent ID: {} with page number: {} and page size: {}", parentId, pageNo, pageSize);
-        return commentService.getCommentsAtLevel(parentId, pageNo, pageSize);
+    public ResponseEntity<?> getCommentsAtLevel(@PathVariable("parentId") Integer parentId,
+                                                @RequestParam(defaultValue = "0") Integer pageNo,
+                                                @RequestParam(defaultValue = "10") Integer pageSize,
+                                                @RequestParam(required = false) String cursor) {
+        logger.debug("Fetching comments at level for parent ID: {} with page number: {}, page size: {} and cursor: {}",
+                parentId, pageNo, pageSize, cursor);
+        return jsonResponseCache.get(NEXT_LEVEL_CACHE, parentId + "-" + pageNo + "-" + pageSize + "-" + cursor,
+                () -> commentService.getCommentsAtLevel(parentId, pageNo, pageSize, cursor));
     }
 
-    @CacheEvict(value = { "fulltree", "nextlevel" }, allEntries = true)
     @PostMapping(value = "/", produces = MediaType.APPLICATION_JSON_VALUE)
     public CommentReply postComment(@Valid @RequestBody CommentPostRequest commentPostRequest) {
-        logger.info("Posting a new comment: {}", commentPostRequest);
+        logger.debug("Posting a new comment: {}", commentPostRequest);
         return commentService.postComment(commentPostRequest);
     }
 
-    @CacheEvict(value = { "fulltree", "nextlevel" }, allEntries = true)
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CommentBatchReply postComments(@Valid @RequestBody CommentBatchPostRequest commentBatchPostRequest) {
+        logger.debug("Posting a batch of {} comments", commentBatchPostRequest.getComments().size());
+        return commentService.postComments(commentBatchPostRequest.getComments());
+    }
+
     @PutMapping(value = "/", produces = MediaType.APPLICATION_JSON_VALUE)
     public CommentReply putComment(@Valid @RequestBody CommentPutRequest commentPutRequest) {
-        logger.info("Updating a comment: {}", commentPutRequest);
+        logger.debug("Updating a comment: {}", commentPutRequest);
         return commentService.putComment(commentPutRequest);
     }
 
-    @CacheEvict(value = { "fulltree", "nextlevel" }, allEntries = true)
     @DeleteMapping(value = "/{commentId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public CommentReply deleteComment(@PathVariable("commentId") Integer commentId, @RequestParam String user) {
-        logger.info("Deleting comment with ID: {} by user: {}", commentId, user);
+        logger.debug("Deleting comment with ID: {} by user: {}", commentId, user);
         return commentService.deleteComment(commentId, user);
     }
 }
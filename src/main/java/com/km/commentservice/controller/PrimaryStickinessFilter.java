@@ -0,0 +1,68 @@
+package com.km.commentservice.controller;
+
+import java.io.IOException;
+
+import com.km.commentservice.datasource.PrimaryStickiness;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Pins the reads of a client to the primary for {@code commentservice.datasource.replica.max-lag} milliseconds after it
+ * wrote. A request that writes gets a cookie holding the time until which the client stays on the primary; requests
+ * sending the cookie back before then read from the primary, and so does the rest of the writing request itself.
+ * Any node can honour the cookie, so it works behind a load balancer without sticky sessions.
+ *
+ * @author karanm
+ */
+@Component
+@ConditionalOnProperty(name = "commentservice.datasource.replica.enabled", havingValue = "true")
+public class PrimaryStickinessFilter extends OncePerRequestFilter {
+    static final String COOKIE_NAME = "commentservice-primary-until";
+
+    @Value("${commentservice.datasource.replica.max-lag:2000}")
+    private long maxLag = 2000;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        PrimaryStickiness.begin(primaryUntil(request) > now, () -> response.addCookie(cookie(now + maxLag)));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            PrimaryStickiness.end();
+        }
+    }
+
+    private Cookie cookie(long primaryUntil) {
+        Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(primaryUntil));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (maxLag + 999) / 1000));
+        return cookie;
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
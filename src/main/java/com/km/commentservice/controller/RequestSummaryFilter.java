@@ -0,0 +1,66 @@
+package com.km.commentservice.controller;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Logs a one line summary of a sample of the requests, in place of the per request lines the controllers and services
+ * log at DEBUG. Requests slower than the slow request threshold and requests that failed with a server error are always
+ * logged.
+ * <p>
+ * Summaries are key=value pairs. The route is the mapped URI pattern rather than the request URI, so summaries of the
+ * same endpoint group together however the ids in the path differ.
+ *
+ * @author karanm
+ */
+@Component
+public class RequestSummaryFilter extends OncePerRequestFilter {
+    Logger logger = LoggerFactory.getLogger(RequestSummaryFilter.class);
+
+    @Value("${commentservice.logging.request-sample-rate:0.01}")
+    private double sampleRate = 0.01;
+
+    @Value("${commentservice.logging.slow-request-threshold:1000}")
+    private long slowRequestThreshold = 1000;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            filterChain.doFilter(request, response);
+        } catch (ServletException | IOException | RuntimeException e) {
+            // The error page that sets the status runs after the exception leaves the filter, the response still reads 200
+            failed = true;
+            throw e;
+        } finally {
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+            if (durationMillis >= slowRequestThreshold || status >= 500) {
+                logger.warn("method={} route={} status={} durationMs={}", request.getMethod(), route(request), status,
+                        durationMillis);
+            } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                logger.info("method={} route={} status={} durationMs={}", request.getMethod(), route(request), status,
+                        durationMillis);
+            }
+        }
+    }
+
+    private static Object route(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern : "unmapped";
+    }
+}
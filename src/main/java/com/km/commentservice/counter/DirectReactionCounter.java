@@ -0,0 +1,48 @@
+package com.km.commentservice.counter;
+
+import java.util.Map;
+
+import com.km.commentservice.dao.ReactionCountDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Updates the reaction_count row of a comment in the transaction of every reaction change.
+ *
+ * @author karanm
+ */
+@Component
+@ConditionalOnProperty(name = "commentservice.reaction-count.mode", havingValue = "direct", matchIfMissing = true)
+public class DirectReactionCounter implements ReactionCounter {
+    @Autowired
+    private ReactionCountDAO reactionCountDAO;
+
+    @Override
+    public void increment(Integer commentId, ReactionType reactionType) {
+        reactionCountDAO.upsertReactionCount(commentId, reactionType, 1);
+    }
+
+    @Override
+    public void decrement(Integer commentId, ReactionType reactionType) {
+        reactionCountDAO.decrementReactionCount(commentId, reactionType);
+    }
+
+    @Override
+    public void add(Map<ReactionCountId, Long> deltas) {
+        reactionCountDAO.applyReactionCountDeltas(deltas);
+    }
+
+    @Override
+    public long pendingDelta(Integer commentId, ReactionType reactionType) {
+        return 0;
+    }
+
+    @Override
+    public void applyPendingDeltas(CommentReply commentReply) {
+        // Nothing is ever pending
+    }
+}
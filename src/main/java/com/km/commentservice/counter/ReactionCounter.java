@@ -0,0 +1,58 @@
+package com.km.commentservice.counter;
+
+import java.util.Map;
+
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+
+/**
+ * Keeps the per comment reaction counts of the reaction_count table in step with the reactions.
+ * Changes are made in the calling transaction; depending on the mode they reach the table right away or later.
+ *
+ * @author karanm
+ */
+public interface ReactionCounter {
+    void increment(Integer commentId, ReactionType reactionType);
+
+    void decrement(Integer commentId, ReactionType reactionType);
+
+    /**
+     * Applies the net changes of several reactions, one change per comment and reaction type.
+     *
+     * @param deltas the changes to the counts, by comment and reaction type
+     */
+    void add(Map<ReactionCountId, Long> deltas);
+
+    /**
+     * @return whether changes reach the reaction_count table in the calling transaction, rather than in a later flush
+     */
+    default boolean writesInTransaction() {
+        return true;
+    }
+
+    /**
+     * @return the change to the count that was made on this node but is not in the reaction_count table yet
+     */
+    long pendingDelta(Integer commentId, ReactionType reactionType);
+
+    /**
+     * Adds the pending changes to the counts read from the reaction_count table.
+     *
+     * @param commentReply a comment with the counts read from the table
+     */
+    default void applyPendingDeltas(CommentReply commentReply) {
+        long likeDelta = pendingDelta(commentReply.getId(), ReactionType.LIKE);
+        if (likeDelta != 0) {
+            commentReply.setLikeCount(valueOf(commentReply.getLikeCount()) + likeDelta);
+        }
+        long dislikeDelta = pendingDelta(commentReply.getId(), ReactionType.DISLIKE);
+        if (dislikeDelta != 0) {
+            commentReply.setDislikeCount(valueOf(commentReply.getDislikeCount()) + dislikeDelta);
+        }
+    }
+
+    private static long valueOf(Long count) {
+        return count != null ? count : 0L;
+    }
+}
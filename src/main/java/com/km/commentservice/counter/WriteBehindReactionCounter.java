@@ -0,0 +1,284 @@
+package com.km.commentservice.counter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dao.ReactionCountDAO;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+import com.km.commentservice.snapshot.CommentTreeSnapshotStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Collects reaction count changes in memory and writes them to the reaction_count table in batches, so a popular comment
+ * does not turn its count row into a lock every reacting request waits for.
+ * <p>
+ * Changes are added to a striped LongAdder per comment and reaction type once the reaction transaction commits. They are
+ * flushed on a fixed interval and whenever the number of changed counts reaches the flush threshold. Reads on this node
+ * add the pending changes to the stored counts; other nodes see them after the flush, which also evicts the cached trees
+ * of the flushed comments.
+ * <p>
+ * A flush swaps in a fresh map, so adders that are no longer written to can be dropped. Changes are added under the read
+ * side of a lock the swap takes the write side of, so no change lands in a map after it was swapped out.
+ * Flushed amounts are subtracted from the adders only after the flush committed; a failed flush is retried on the next run.
+ * The cached trees are evicted after the subtraction, so a tree read between the commit and the subtraction, which
+ * counts the flushed changes twice, does not stay cached.
+ * Flushes hold a lock rather than a monitor, so a flush writing to the database does not pin the scheduler's virtual thread.
+ * <p>
+ * Flush durations, the number of pending counts and the flush lag, how long the oldest pending change may have waited,
+ * are reported on {@code /actuator/metrics} as {@code commentservice.reaction-count.*}.
+ *
+ * @author karanm
+ */
+@Component
+@ConditionalOnProperty(name = "commentservice.reaction-count.mode", havingValue = "write-behind")
+public class WriteBehindReactionCounter implements ReactionCounter, MeterBinder {
+    Logger logger = LoggerFactory.getLogger(WriteBehindReactionCounter.class);
+
+    @Autowired
+    private ReactionCountDAO reactionCountDAO;
+
+    @Autowired
+    private CommentDAO commentDAO;
+
+    @Autowired
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${commentservice.reaction-count.flush-threshold:10000}")
+    private int flushThreshold = 10000;
+
+    // Replaced as a whole, so a read sees every change exactly once while a flush swaps the maps
+    private volatile Generations generations = new Generations(new ConcurrentHashMap<>(), List.of());
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // Read side held while adding a change, write side while swapping the maps
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    // Start of the last flush that wrote everything pending at the time, every change still pending is younger
+    private volatile long lastFlushedAt = System.nanoTime();
+
+    private volatile Timer flushTimer;
+
+    private final ExecutorService thresholdFlushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reaction-count-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void increment(Integer commentId, ReactionType reactionType) {
+        afterCommit(() -> add(commentId, reactionType, 1));
+    }
+
+    @Override
+    public void decrement(Integer commentId, ReactionType reactionType) {
+        afterCommit(() -> add(commentId, reactionType, -1));
+    }
+
+    @Override
+    public void add(Map<ReactionCountId, Long> deltas) {
+        Map<ReactionCountId, Long> changes = Map.copyOf(deltas);
+        afterCommit(() -> changes.forEach((reactionCountId, delta) ->
+                add(reactionCountId.getCommentId(), reactionCountId.getReactionType(), delta)));
+    }
+
+    @Override
+    public boolean writesInTransaction() {
+        return false;
+    }
+
+    @Override
+    public long pendingDelta(Integer commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = reactionCountId(commentId, reactionType);
+        Generations current = generations;
+        long delta = sum(current.pending(), reactionCountId);
+        for (Map<ReactionCountId, LongAdder> retired : current.retired()) {
+            delta += sum(retired, reactionCountId);
+        }
+        return delta;
+    }
+
+    /**
+     * Writes all pending changes to the reaction_count table in one transaction.
+     */
+    @Scheduled(fixedDelayString = "${commentservice.reaction-count.flush-interval:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            long now = System.nanoTime();
+            Timer.Sample sample = Timer.start();
+            List<Map<ReactionCountId, LongAdder>> retired = new ArrayList<>(generations.retired());
+            swapLock.writeLock().lock();
+            try {
+                retired.add(generations.pending());
+                generations = new Generations(new ConcurrentHashMap<>(), List.copyOf(retired));
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+
+            Map<ReactionCountId, Long> deltas = new HashMap<>();
+            Map<LongAdder, Long> flushed = new IdentityHashMap<>();
+            for (Map<ReactionCountId, LongAdder> map : retired) {
+                map.forEach((reactionCountId, adder) -> {
+                    long delta = adder.sum();
+                    if (delta != 0) {
+                        deltas.merge(reactionCountId, delta, Long::sum);
+                        flushed.put(adder, delta);
+                    }
+                });
+            }
+
+            if (!deltas.isEmpty()) {
+                logger.info("Flushing {} pending reaction counts", deltas.size());
+                Map<Integer, String> paths;
+                try {
+                    paths = new TransactionTemplate(transactionManager).execute(status -> {
+                        reactionCountDAO.applyReactionCountDeltas(deltas);
+                        List<Integer> commentIds = deltas.keySet().stream().map(ReactionCountId::getCommentId).distinct().toList();
+                        Map<Integer, String> commentPaths = new HashMap<>();
+                        for (CommentHeader comment : commentDAO.findHeadersByIdIn(commentIds)) {
+                            commentPaths.put(comment.id(), comment.path());
+                        }
+                        return commentPaths;
+                    });
+                } catch (RuntimeException e) {
+                    logger.error("Failed to flush {} pending reaction counts, retrying on the next flush", deltas.size(), e);
+                    return;
+                }
+                // Changes added while flushing stay in the adders
+                flushed.forEach((adder, delta) -> adder.add(-delta));
+                // Outside the transaction both run right away, the snapshots are patched before the trees are evicted
+                commentTreeSnapshotStore.reactionCountsChanged(deltas, paths::get);
+                cacheInvalidator.evictCommentTrees(paths.values());
+            }
+            lastFlushedAt = now;
+            if (flushTimer != null) {
+                sample.stop(flushTimer);
+            }
+
+            // Every change of the swapped out maps was written and subtracted, and none can be added to them any more
+            generations = new Generations(generations.pending(), List.of());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        flushTimer = Timer.builder("commentservice.reaction-count.flush")
+                .description("Time taken to write the pending reaction counts")
+                .register(registry);
+        Gauge.builder("commentservice.reaction-count.pending", this, WriteBehindReactionCounter::pendingCount)
+                .description("The number of reaction counts with changes not yet written")
+                .register(registry);
+        Gauge.builder("commentservice.reaction-count.flush.lag", this, WriteBehindReactionCounter::flushLagSeconds)
+                .description("Upper bound on how long the oldest pending reaction count change has waited")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private double pendingCount() {
+        // Adders whose changes cancelled out or were already written are not pending
+        Generations current = generations;
+        long count = current.pending().values().stream().filter(adder -> adder.sum() != 0).count();
+        for (Map<ReactionCountId, LongAdder> retired : current.retired()) {
+            count += retired.values().stream().filter(adder -> adder.sum() != 0).count();
+        }
+        return count;
+    }
+
+    private double flushLagSeconds() {
+        if (pendingCount() == 0) {
+            return 0;
+        }
+        return (System.nanoTime() - lastFlushedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        thresholdFlushExecutor.shutdown();
+        flush();
+    }
+
+    private void add(Integer commentId, ReactionType reactionType, long delta) {
+        int size;
+        swapLock.readLock().lock();
+        try {
+            Map<ReactionCountId, LongAdder> map = generations.pending();
+            map.computeIfAbsent(reactionCountId(commentId, reactionType), reactionCountId -> new LongAdder()).add(delta);
+            size = map.size();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        if (size >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            thresholdFlushExecutor.execute(this::flush);
+        }
+    }
+
+    private static long sum(Map<ReactionCountId, LongAdder> map, ReactionCountId reactionCountId) {
+        LongAdder adder = map.get(reactionCountId);
+        return adder != null ? adder.sum() : 0L;
+    }
+
+    private static ReactionCountId reactionCountId(Integer commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(commentId);
+        reactionCountId.setReactionType(reactionType);
+        return reactionCountId;
+    }
+
+    // Retired maps are kept until their changes are written, after a failed flush they are retried with the next one
+    private record Generations(Map<ReactionCountId, LongAdder> pending, List<Map<ReactionCountId, LongAdder>> retired) {}
+
+    private void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.km.commentservice.dao;
+
+/**
+ * How subtree reads find the descendants of a comment.
+ *
+ * @author karanm
+ */
+public enum AncestryStrategy {
+    // Prefix match on the materialized Comment.path
+    PATH,
+    // Indexed join on the comment_closure table
+    CLOSURE
+}
@@ -0,0 +1,25 @@
+package com.km.commentservice.dao;
+
+import com.km.commentservice.model.CommentClosure;
+import com.km.commentservice.model.CommentClosureId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * @author karanm
+ */
+@Repository
+public interface CommentClosureDAO extends JpaRepository<CommentClosure, CommentClosureId>, CustomCommentClosureRepository {
+    /**
+     * Adds the closure rows of a new comment: one row per ancestor of the parent, copied one level deeper,
+     * plus the row of the comment to itself.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO comment_closure (ancestor_id, descendant_id, depth) " +
+            "SELECT cl.ancestor_id, :commentId, cl.depth + 1 FROM comment_closure cl WHERE cl.descendant_id = :parentId " +
+            "UNION ALL SELECT CAST(:commentId AS SIGNED), CAST(:commentId AS SIGNED), 0", nativeQuery = true)
+    public int insertClosureRows(@Param("commentId") Integer commentId, @Param("parentId") Integer parentId);
+}
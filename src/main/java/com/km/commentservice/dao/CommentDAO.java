@@ -1,10 +1,16 @@
 package com.km.commentservice.dao;
 
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -12,7 +18,22 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface CommentDAO extends JpaRepository<Comment, Integer>, CustomCommentRepository {
+    String HEADER_SELECT = "SELECT new com.km.commentservice.model.CommentHeader(c.id, c.parentId, c.path, c.level, c.isDeleted, c.user) " +
+            "FROM Comment c ";
+
+    @Query(HEADER_SELECT + "WHERE c.id = :commentId")
+    public Optional<CommentHeader> findHeaderById(@Param("commentId") Integer commentId);
+
+    @Query(HEADER_SELECT + "WHERE c.id IN :commentIds")
+    public List<CommentHeader> findHeadersByIdIn(@Param("commentIds") Collection<Integer> commentIds);
+
     public List<Comment> findByParentId(Integer parentId);
 
     public List<Comment> findByLevel(Integer integer);
+
+    @Modifying
+    @Query("UPDATE Comment c " +
+            "SET c.descendantCount = c.descendantCount + :delta " +
+            "WHERE c.id IN :commentIds")
+    public int updateDescendantCount(@Param("commentIds") Collection<Integer> commentIds, @Param("delta") Long delta);
 }
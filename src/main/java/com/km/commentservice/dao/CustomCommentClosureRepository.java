@@ -0,0 +1,12 @@
+package com.km.commentservice.dao;
+
+import java.util.List;
+
+import com.km.commentservice.model.CommentClosure;
+
+/**
+ * @author karanm
+ */
+public interface CustomCommentClosureRepository {
+    void persistAll(List<CommentClosure> commentClosures);
+}
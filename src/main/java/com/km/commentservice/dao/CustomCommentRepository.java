@@ -1,8 +1,11 @@
 package com.km.commentservice.dao;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.Comment;
 import org.springframework.data.domain.Pageable;
 
 /**
@@ -11,5 +14,20 @@ import org.springframework.data.domain.Pageable;
 public interface CustomCommentRepository {
     List<CommentReply> getCommentTreeById(String path, Integer commentId, Integer maxDepth);
 
+    List<CommentReply> getCommentTreeById(String path, Integer commentId, Integer maxDepth, int maxRows);
+
+    Stream<CommentReply> streamCommentTreeById(String path, Integer commentId, Integer maxDepth);
+
     List<CommentReply> getCommentsAtLevel(String commentId, Integer level, Pageable pageable);
+
+    List<CommentReply> getCommentsAtLevelAfter(String commentId, Integer level, String afterPath, Integer afterId,
+                                               Integer pageSize);
+
+    int rebuildDescendantCounts();
+
+    Map<Integer, String> findLegacyPaths(String afterPath, int limit);
+
+    void updatePaths(Map<Integer, String> paths);
+
+    void persist(Comment comment);
 }
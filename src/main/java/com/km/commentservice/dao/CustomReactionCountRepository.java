@@ -0,0 +1,15 @@
+package com.km.commentservice.dao;
+
+import java.util.Map;
+
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+
+/**
+ * @author karanm
+ */
+public interface CustomReactionCountRepository {
+    void upsertReactionCount(Integer commentId, ReactionType reactionType, long delta);
+
+    void applyReactionCountDeltas(Map<ReactionCountId, Long> deltas);
+}
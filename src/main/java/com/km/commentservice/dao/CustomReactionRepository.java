@@ -0,0 +1,12 @@
+package com.km.commentservice.dao;
+
+import java.util.List;
+
+import com.km.commentservice.model.Reaction;
+
+/**
+ * @author karanm
+ */
+public interface CustomReactionRepository {
+    void persistAll(List<Reaction> reactions);
+}
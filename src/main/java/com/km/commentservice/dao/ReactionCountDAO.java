@@ -15,14 +15,8 @@ import org.springframework.stereotype.Repository;
  * @author karanm
  */
 @Repository
-public interface ReactionCountDAO extends JpaRepository<ReactionCount, Integer> {
+public interface ReactionCountDAO extends JpaRepository<ReactionCount, Integer>, CustomReactionCountRepository {
     public Optional<ReactionCount> findById(ReactionCountId reactionCountId);
-    @Modifying
-    @Query("UPDATE ReactionCount " +
-            "SET count = count + 1 " +
-            "WHERE id.commentId = :commentId AND id.reactionType = :reactionType")
-    public void incrementReactionCount(@Param("commentId") Integer commentId, @Param("reactionType") ReactionType reactionType);
-
     @Modifying
     @Query("UPDATE ReactionCount " +
             "SET count = count - 1 " +
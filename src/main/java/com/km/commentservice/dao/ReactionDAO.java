@@ -1,6 +1,7 @@
 package com.km.commentservice.dao;
 
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,7 +16,7 @@ import org.springframework.stereotype.Repository;
  * @author karanm
  */
 @Repository
-public interface ReactionDAO extends JpaRepository<Reaction, Integer> {
+public interface ReactionDAO extends JpaRepository<Reaction, Integer>, CustomReactionRepository {
     public Integer deleteById(ReactionId reactionId);
 
     public boolean existsById(ReactionId reactionId);
@@ -23,4 +24,6 @@ public interface ReactionDAO extends JpaRepository<Reaction, Integer> {
     public Optional<Reaction> findById(ReactionId reactionId);
 
     public List<Reaction> findByIdCommentIdAndReactionTypeOrderByUpdatedAtDesc(Integer commentId, ReactionType reactionType, Pageable pageable);
+
+    public List<Reaction> findByIdCommentIdInAndIdUserIn(Collection<Integer> commentIds, Collection<String> users);
 }
@@ -0,0 +1,30 @@
+package com.km.commentservice.dao.impl;
+
+import java.util.List;
+
+import com.km.commentservice.dao.CustomCommentClosureRepository;
+import com.km.commentservice.model.CommentClosure;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * CustomCommentClosureRepositoryImpl implements the writes of the CustomCommentClosureRepository interface.
+ * Closure rows always carry their key, so saveAll would merge them and read every row before inserting it. Persisting
+ * them skips the read and lets Hibernate batch the inserts.
+ *
+ * @author karanm
+ */
+public class CustomCommentClosureRepositoryImpl implements CustomCommentClosureRepository {
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * Inserts new closure rows.
+     *
+     * @param commentClosures the rows, none of them may exist yet
+     */
+    @Override
+    public void persistAll(List<CommentClosure> commentClosures) {
+        commentClosures.forEach(entityManager::persist);
+    }
+}
@@ -1,14 +1,26 @@
 package com.km.commentservice.dao.impl;
 
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import com.km.commentservice.dao.AncestryStrategy;
 import com.km.commentservice.dao.CustomCommentRepository;
 import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentPath;
 import com.km.commentservice.model.ReactionType;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 
 /**
@@ -23,21 +35,59 @@ public class CustomCommentRepositoryImpl implements CustomCommentRepository {
     @Autowired
     private EntityManager entityManager;
 
+    @Value("${commentservice.ancestry.strategy:PATH}")
+    private AncestryStrategy ancestryStrategy = AncestryStrategy.PATH;
+
     // Prefix for the query to fetch comments and their reaction counts
-    private final String prefixQuery =
+    private static final String PREFIX_QUERY =
             "SELECT new com.km.commentservice.dto.CommentReply(c.id as id, c.user as user, c.body as body, c.parentId as parentId, " +
-                    "(SELECT COUNT(*) FROM Comment cc where cc.path LIKE (CONCAT(c.path,'%')) AND cc.path != c.path) as replies, ";
+                    "c.descendantCount as replies, ";
 
     // Dynamic infix for the query to calculate reaction counts for each reaction type
-    private final String dynamicInfix = "SUM(CASE WHEN rc.id.reactionType = %d THEN rc.count ELSE 0 END) AS %sCount, ";
+    private static final String DYNAMIC_INFIX = "SUM(CASE WHEN rc.id.reactionType = %d THEN rc.count ELSE 0 END) AS %sCount, ";
 
     // Suffix for the query to fetch comments and their reaction count
-    private final String suffixQuery =
-            "c.level as level, c.createdAt as created, c.updatedAt updated, c.isDeleted as isDeleted) from Comment c " +
-                    "LEFT JOIN ReactionCount rc on c.id = rc.id.commentId ";
+    private static final String SUFFIX_QUERY =
+            "c.level as level, c.createdAt as created, c.updatedAt updated, c.isDeleted as isDeleted) ";
+
+    private static final String COMMENT_FROM = "from Comment c ";
+
+    private static final String REACTION_COUNT_JOIN = "LEFT JOIN ReactionCount rc on c.id = rc.id.commentId ";
+
+    // The query strings are built once, identical strings also keep hitting Hibernate's query interpretation cache
+    private static final String TREE_QUERY = buildQuery(
+            "where c.path LIKE (CONCAT(:path,'%')) AND c.id != :commentId AND level <= :maxDepth GROUP BY c.id ORDER BY c.path");
+
+    // Starts from the closure rows of the comment, found by a range over the (ancestor_id, depth) index alone.
+    // Some databases (H2) join in the order the joins are written.
+    private static final String TREE_CLOSURE_QUERY = buildQuery("from CommentClosure cl JOIN Comment c on c.id = cl.id.descendantId ",
+            "where cl.id.ancestorId = :commentId AND cl.depth > 0 AND cl.depth <= :maxClosureDepth GROUP BY c.id ORDER BY c.path");
+
+    private static final String LEVEL_QUERY = buildQuery(
+            "where c.path LIKE (CONCAT(:commentId,'%')) AND level = :level GROUP BY c.id ORDER BY c.path");
+
+    private static final String LEVEL_SEEK_QUERY = buildQuery(
+            "where c.path LIKE (CONCAT(:commentId,'%')) AND level = :level " +
+            "AND (c.path > :afterPath OR (c.path = :afterPath AND c.id > :afterId)) GROUP BY c.id ORDER BY c.path, c.id");
+
+    private static final String LEGACY_PATH_QUERY =
+            "SELECT c.id, c.path FROM Comment c WHERE c.path > :afterPath AND c.path NOT LIKE '" + CommentPath.SEPARATOR + "%' " +
+            "ORDER BY c.path";
+
+    private static final String UPDATE_PATH_QUERY = "UPDATE comment SET path = ? WHERE id = ?";
+
+    // MySQL Connector/J only streams a result set row by row with this fetch size, any other value buffers all rows.
+    // Other drivers reject a negative fetch size and stream in batches of a positive one.
+    private static final int MYSQL_STREAM_FETCH_SIZE = Integer.MIN_VALUE;
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    // Resolved from the first connection, the database does not change at runtime
+    private volatile Boolean mysqlStreaming;
 
     /**
      * Fetches a tree of comments by their path and id, up to a maximum depth.
+     * With the closure strategy the descendants of a comment are found through the comment_closure table,
+     * the top level tree (comment id 0) is always read by path as it spans all comments.
      *
      * @param path the path of the comment
      * @param commentId the id of the comment
@@ -46,16 +96,67 @@ public class CustomCommentRepositoryImpl implements CustomCommentRepository {
      */
     @Override
     public List<CommentReply> getCommentTreeById(String path, Integer commentId, Integer maxDepth) {
-        logger.info("Fetching comment tree by ID with path: {}, comment ID: {}, and max depth: {}",
+        logger.debug("Fetching comment tree by ID with path: {}, comment ID: {}, and max depth: {}",
                 path, commentId, maxDepth);
+        return createTreeQuery(path, commentId, maxDepth).getResultList();
+    }
 
-        String whereClause = "where c.path LIKE (CONCAT(:path,'%')) AND c.id != :commentId AND level <= :maxDepth GROUP BY c.id ORDER BY c.path";
+    /**
+     * Fetches the first rows of a tree of comments in path order, for callers that only want trees up to a size.
+     *
+     * @param path the path of the comment
+     * @param commentId the id of the comment
+     * @param maxDepth the maximum depth of the comment tree
+     * @param maxRows the most rows to return
+     * @return a list of CommentReply objects representing the comment tree, cut off after maxRows
+     */
+    @Override
+    public List<CommentReply> getCommentTreeById(String path, Integer commentId, Integer maxDepth, int maxRows) {
+        logger.debug("Fetching up to {} rows of comment tree by ID with path: {}, comment ID: {}, and max depth: {}",
+                maxRows, path, commentId, maxDepth);
+        return createTreeQuery(path, commentId, maxDepth).setMaxResults(maxRows).getResultList();
+    }
 
-        return entityManager.createQuery(buildQuery(whereClause), CommentReply.class)
+    /**
+     * Streams a tree of comments in path order, the same rows as getCommentTreeById without holding them all in memory.
+     * The stream has to be consumed and closed inside the transaction that opened it.
+     *
+     * @param path the path of the comment
+     * @param commentId the id of the comment
+     * @param maxDepth the maximum depth of the comment tree
+     * @return a stream of CommentReply objects representing the comment tree
+     */
+    @Override
+    public Stream<CommentReply> streamCommentTreeById(String path, Integer commentId, Integer maxDepth) {
+        logger.debug("Streaming comment tree by ID with path: {}, comment ID: {}, and max depth: {}",
+                path, commentId, maxDepth);
+        return createTreeQuery(path, commentId, maxDepth)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, isMysqlStreaming() ? MYSQL_STREAM_FETCH_SIZE : STREAM_FETCH_SIZE)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private boolean isMysqlStreaming() {
+        if (mysqlStreaming == null) {
+            String databaseName = entityManager.unwrap(Session.class)
+                    .doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
+            mysqlStreaming = "MySQL".equalsIgnoreCase(databaseName) || "MariaDB".equalsIgnoreCase(databaseName);
+        }
+        return mysqlStreaming;
+    }
+
+    private TypedQuery<CommentReply> createTreeQuery(String path, Integer commentId, Integer maxDepth) {
+        if (ancestryStrategy == AncestryStrategy.CLOSURE && commentId != 0) {
+            // A descendant's level is the level of the comment, the number of its ancestors, plus the closure depth
+            return entityManager.createQuery(TREE_CLOSURE_QUERY, CommentReply.class)
+                    .setParameter("commentId", commentId)
+                    .setParameter("maxClosureDepth", maxDepth - CommentPath.ancestorIds(path).size());
+        }
+
+        return entityManager.createQuery(TREE_QUERY, CommentReply.class)
                 .setParameter("path", path)
                 .setParameter("commentId", commentId)
-                .setParameter("maxDepth", maxDepth)
-                .getResultList();
+                .setParameter("maxDepth", maxDepth);
     }
 
     /**
@@ -68,34 +169,142 @@ public class CustomCommentRepositoryImpl implements CustomCommentRepository {
      */
     @Override
     public List<CommentReply> getCommentsAtLevel(String commentId, Integer level, Pageable pageable) {
-        logger.info("Fetching comments at level with comment ID: {}, level: {}, page number: {}, and page size: {}",
+        logger.debug("Fetching comments at level with comment ID: {}, level: {}, page number: {}, and page size: {}",
                 commentId, level, pageable.getPageNumber(), pageable.getPageSize());
 
-        String whereClause = "where c.path LIKE (CONCAT(:commentId,'%')) AND level = :level GROUP BY c.id ORDER BY c.path";
-
-        return entityManager.createQuery(buildQuery(whereClause), CommentReply.class)
+        return entityManager.createQuery(LEVEL_QUERY, CommentReply.class)
                 .setFirstResult(pageable.getPageNumber() * pageable.getPageSize())
                 .setMaxResults(pageable.getPageSize())
                 .setParameter("commentId", commentId)
                 .setParameter("level", level).getResultList();
     }
 
+    /**
+     * Fetches the page of comments at a specific level that directly follows the given position.
+     * Unlike offset paging the database seeks to the position instead of reading and discarding earlier pages.
+     *
+     * @param commentId the path of the parent comment
+     * @param level the level of the comments to fetch
+     * @param afterPath the path of the last comment of the previous page
+     * @param afterId the id of the last comment of the previous page
+     * @param pageSize the number of comments to fetch
+     * @return a list of CommentReply objects representing the comments after the position
+     */
+    @Override
+    public List<CommentReply> getCommentsAtLevelAfter(String commentId, Integer level, String afterPath, Integer afterId,
+                                                      Integer pageSize) {
+        logger.debug("Fetching comments at level with comment ID: {}, level: {}, after path: {} and page size: {}",
+                commentId, level, afterPath, pageSize);
+
+        return entityManager.createQuery(LEVEL_SEEK_QUERY, CommentReply.class)
+                .setMaxResults(pageSize)
+                .setParameter("commentId", commentId)
+                .setParameter("level", level)
+                .setParameter("afterPath", afterPath)
+                .setParameter("afterId", afterId).getResultList();
+    }
+
+    /**
+     * Recomputes the stored descendant count of every comment from the comment paths.
+     * Meant for backfills and repairs, regular writes keep the counts up to date incrementally.
+     *
+     * @return the number of comments updated
+     */
+    @Override
+    public int rebuildDescendantCounts() {
+        logger.info("Rebuilding descendant counts for all comments");
+
+        // MySQL does not allow the updated table in a subquery of the SET clause, hence the derived table join.
+        // Descendants follow the path of the comment and a separator, legacy paths use the legacy separator.
+        String rebuildQuery = "UPDATE comment c JOIN (SELECT a.id AS id, COUNT(d.id) AS descendants FROM comment a " +
+                "LEFT JOIN comment d ON d.path LIKE CONCAT(a.path, '" + CommentPath.SEPARATOR + "%') " +
+                "OR d.path LIKE CONCAT(a.path, '" + CommentPath.LEGACY_SEPARATOR + "%') GROUP BY a.id) t ON t.id = c.id " +
+                "SET c.descendant_count = t.descendants";
+
+        return entityManager.createNativeQuery(rebuildQuery).executeUpdate();
+    }
+
+    /**
+     * Fetches the next comments in path order whose path is still in the legacy encoding. Legacy paths start with a
+     * digit and fixed width paths with a slash, which sorts before all digits, so the read is a range over the path
+     * index that starts past all migrated paths.
+     *
+     * @param afterPath the last legacy path of the previous batch, or {@link CommentPath#LEGACY_PATHS_START} for the first batch
+     * @param limit the maximum number of comments to fetch
+     * @return the legacy path of each comment by id, in path order
+     */
+    @Override
+    public Map<Integer, String> findLegacyPaths(String afterPath, int limit) {
+        List<Tuple> rows = entityManager.createQuery(LEGACY_PATH_QUERY, Tuple.class)
+                .setParameter("afterPath", afterPath)
+                .setMaxResults(limit)
+                .getResultList();
+        Map<Integer, String> paths = new LinkedHashMap<>();
+        for (Tuple row : rows) {
+            paths.put(row.get(0, Integer.class), row.get(1, String.class));
+        }
+        return paths;
+    }
+
+    /**
+     * Sets the path of the given comments in one JDBC batch. The update bypasses the entities, so updated_at keeps
+     * the time the comment itself was last changed. Must be called within a transaction.
+     *
+     * @param paths the new path of each comment by id
+     */
+    @Override
+    public void updatePaths(Map<Integer, String> paths) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_PATH_QUERY)) {
+                for (Map.Entry<Integer, String> entry : paths.entrySet()) {
+                    update.setString(1, entry.getValue());
+                    update.setInt(2, entry.getKey());
+                    update.addBatch();
+                }
+                update.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Inserts a new comment whose id is already assigned. Unlike save, which merges entities that carry an id,
+     * this does not look the comment up first.
+     *
+     * @param comment the new comment
+     */
+    @Override
+    public void persist(Comment comment) {
+        entityManager.persist(comment);
+    }
+
     /**
      * Builds a query to fetch comments and their reaction counts.
+     * Only called while initializing the query constants.
+     *
+     * @param whereClause the WHERE clause to use in the query
+     * @return the complete query string
+     */
+    static String buildQuery(String whereClause) {
+        return buildQuery(COMMENT_FROM, whereClause);
+    }
+
+    /**
+     * Builds a query to fetch comments and their reaction counts from the given tables.
      *
+     * @param fromClause the FROM clause, joining the comments as c
      * @param whereClause the WHERE clause to use in the query
      * @return the complete query string
      */
-    private String buildQuery(String whereClause) {
-        logger.info("Building query with where clause: {}", whereClause);
+    static String buildQuery(String fromClause, String whereClause) {
         StringBuilder queryBuilder = new StringBuilder();
-        queryBuilder.append(prefixQuery);
+        queryBuilder.append(PREFIX_QUERY);
         for(ReactionType reactionType : ReactionType.values()) {
-            queryBuilder.append(String.format(dynamicInfix, reactionType.ordinal(), reactionType.toString().toLowerCase()));
+            queryBuilder.append(String.format(DYNAMIC_INFIX, reactionType.ordinal(), reactionType.toString().toLowerCase()));
         }
-        queryBuilder.append(suffixQuery);
+        queryBuilder.append(SUFFIX_QUERY);
+        queryBuilder.append(fromClause);
+        queryBuilder.append(REACTION_COUNT_JOIN);
         queryBuilder.append(whereClause);
-        logger.info("Built query with where clause: {}", queryBuilder.toString()) ;
         return queryBuilder.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package com.km.commentservice.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.km.commentservice.dao.CustomReactionCountRepository;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * CustomReactionCountRepositoryImpl implements the writes of the CustomReactionCountRepository interface.
+ * A count is changed with a single upsert statement, so the first reactions to a comment cannot race each other into a
+ * duplicate key. MySQL and MariaDB use INSERT ... ON DUPLICATE KEY UPDATE, other databases (H2 in tests) a standard MERGE.
+ * MERGE is not atomic on every database, two concurrent inserts of the same count can still collide, so a MERGE that hits
+ * the primary key is run again and then updates the row the other transaction inserted.
+ * <p>
+ * A count without a row starts at zero, so a negative change to it, e.g. a reaction removed before its count was ever
+ * written, creates the row with a count of zero rather than a negative one.
+ *
+ * @author karanm
+ */
+public class CustomReactionCountRepositoryImpl implements CustomReactionCountRepository {
+    Logger logger = LoggerFactory.getLogger(CustomReactionCountRepositoryImpl.class);
+
+    private static final String MYSQL_UPSERT_QUERY =
+            "INSERT INTO reaction_count (comment_id, reaction_type, count) VALUES (?, ?, GREATEST(0, ?)) " +
+            "ON DUPLICATE KEY UPDATE count = count + ?";
+
+    private static final String MERGE_UPSERT_QUERY =
+            "MERGE INTO reaction_count rc " +
+            "USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BIGINT))) AS d (comment_id, reaction_type, delta) " +
+            "ON rc.comment_id = d.comment_id AND rc.reaction_type = d.reaction_type " +
+            "WHEN MATCHED THEN UPDATE SET count = rc.count + d.delta " +
+            "WHEN NOT MATCHED THEN INSERT (comment_id, reaction_type, count) VALUES (d.comment_id, d.reaction_type, GREATEST(0, d.delta))";
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private static final String UNIQUE_VIOLATION_SQL_STATE = "23505";
+
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+
+    // Resolved from the first connection, the database does not change at runtime
+    private volatile Boolean mysqlUpsert;
+
+    /**
+     * Adds the given change to a reaction count, creating the count if it has no row yet.
+     *
+     * @param commentId the id of the comment
+     * @param reactionType the type of the reaction
+     * @param delta the change to the count
+     */
+    @Override
+    public void upsertReactionCount(Integer commentId, ReactionType reactionType, long delta) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement upsert = prepareUpsert(connection)) {
+                executeUpsert(upsert, commentId, reactionType, delta);
+            }
+        });
+    }
+
+    /**
+     * Adds the given changes to the stored reaction counts in one JDBC batch of upserts, or one MERGE per count where a
+     * failed MERGE has to be retried on its own. Must be called within a transaction.
+     *
+     * @param deltas the change to each reaction count
+     */
+    @Override
+    public void applyReactionCountDeltas(Map<ReactionCountId, Long> deltas) {
+        logger.debug("Applying {} reaction count deltas", deltas.size());
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement upsert = prepareUpsert(connection)) {
+                for (Map.Entry<ReactionCountId, Long> entry : deltas.entrySet()) {
+                    if (mysqlUpsert) {
+                        bindUpsert(upsert, entry.getKey().getCommentId(), entry.getKey().getReactionType(), entry.getValue());
+                        upsert.addBatch();
+                    } else {
+                        executeUpsert(upsert, entry.getKey().getCommentId(), entry.getKey().getReactionType(), entry.getValue());
+                    }
+                }
+                if (mysqlUpsert) {
+                    upsert.executeBatch();
+                }
+            }
+        });
+    }
+
+    private PreparedStatement prepareUpsert(Connection connection) throws SQLException {
+        if (mysqlUpsert == null) {
+            String databaseName = connection.getMetaData().getDatabaseProductName();
+            mysqlUpsert = "MySQL".equalsIgnoreCase(databaseName) || "MariaDB".equalsIgnoreCase(databaseName);
+        }
+        return connection.prepareStatement(mysqlUpsert ? MYSQL_UPSERT_QUERY : MERGE_UPSERT_QUERY);
+    }
+
+    private void executeUpsert(PreparedStatement upsert, Integer commentId, ReactionType reactionType, long delta)
+            throws SQLException {
+        bindUpsert(upsert, commentId, reactionType, delta);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                upsert.executeUpdate();
+                return;
+            } catch (SQLException e) {
+                if (mysqlUpsert || attempt == MAX_MERGE_ATTEMPTS || !UNIQUE_VIOLATION_SQL_STATE.equals(e.getSQLState())) {
+                    throw e;
+                }
+                logger.info("Concurrent insert of reaction count for comment ID: {} and reaction type: {}, merging again",
+                        commentId, reactionType);
+            }
+        }
+    }
+
+    private void bindUpsert(PreparedStatement upsert, Integer commentId, ReactionType reactionType, long delta)
+            throws SQLException {
+        upsert.setInt(1, commentId);
+        upsert.setInt(2, reactionType.ordinal());
+        upsert.setLong(3, delta);
+        if (mysqlUpsert) {
+            upsert.setLong(4, delta);
+        }
+    }
+}
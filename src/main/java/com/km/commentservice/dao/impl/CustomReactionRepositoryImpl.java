@@ -0,0 +1,29 @@
+package com.km.commentservice.dao.impl;
+
+import java.util.List;
+
+import com.km.commentservice.dao.CustomReactionRepository;
+import com.km.commentservice.model.Reaction;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * CustomReactionRepositoryImpl implements the writes of the CustomReactionRepository interface.
+ * Reactions are keyed by comment and user, so saveAll would merge them and read every reaction before inserting it.
+ *
+ * @author karanm
+ */
+public class CustomReactionRepositoryImpl implements CustomReactionRepository {
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * Inserts new reactions, batched by Hibernate.
+     *
+     * @param reactions the reactions, none of them may exist yet
+     */
+    @Override
+    public void persistAll(List<Reaction> reactions) {
+        reactions.forEach(entityManager::persist);
+    }
+}
@@ -0,0 +1,11 @@
+package com.km.commentservice.datasource;
+
+/**
+ * The pools ReadWriteRoutingDataSource sends connections to.
+ *
+ * @author karanm
+ */
+public enum DataSourceRoute {
+    PRIMARY,
+    REPLICA
+}
@@ -0,0 +1,68 @@
+package com.km.commentservice.datasource;
+
+/**
+ * Keeps the reads of a request on the primary once the request or the same client has written, so a user reads their
+ * own comments and reactions before the replica has caught up.
+ * <p>
+ * The state lives on the request thread between begin and end. Threads outside a request, like the scheduled flushes,
+ * are never pinned, and their writes go to the primary anyway.
+ *
+ * @author karanm
+ */
+public final class PrimaryStickiness {
+    private static final ThreadLocal<RequestState> REQUEST_STATE = new ThreadLocal<>();
+
+    private PrimaryStickiness() {
+    }
+
+    /**
+     * Starts tracking the current request.
+     *
+     * @param pinned whether the client wrote recently enough for its reads to go to the primary
+     * @param onFirstWrite runs once when the request first writes, to tell the client to stay on the primary
+     */
+    public static void begin(boolean pinned, Runnable onFirstWrite) {
+        REQUEST_STATE.set(new RequestState(pinned, onFirstWrite));
+    }
+
+    /**
+     * Stops tracking the current request.
+     */
+    public static void end() {
+        REQUEST_STATE.remove();
+    }
+
+    /**
+     * @return whether reads of the current request have to go to the primary
+     */
+    public static boolean isPinned() {
+        RequestState state = REQUEST_STATE.get();
+        return state != null && state.pinned;
+    }
+
+    /**
+     * Records that the current request writes, which pins its later reads to the primary.
+     */
+    public static void markWritten() {
+        RequestState state = REQUEST_STATE.get();
+        if (state == null || state.written) {
+            return;
+        }
+        state.written = true;
+        state.pinned = true;
+        state.onFirstWrite.run();
+    }
+
+    private static final class RequestState {
+        private boolean pinned;
+
+        private boolean written;
+
+        private final Runnable onFirstWrite;
+
+        private RequestState(boolean pinned, Runnable onFirstWrite) {
+            this.pinned = pinned;
+            this.onFirstWrite = onFirstWrite;
+        }
+    }
+}
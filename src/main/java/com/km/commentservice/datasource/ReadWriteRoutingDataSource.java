@@ -0,0 +1,52 @@
+package com.km.commentservice.datasource;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections of read only transactions to the replica pool and all others to the primary pool.
+ * Connections taken outside a transaction go to the primary, as do the reads of a request pinned by PrimaryStickiness.
+ * <p>
+ * The route is picked when the connection is taken, so the data source has to be wrapped in a
+ * LazyConnectionDataSourceProxy (see {@link #lazy}): the transaction manager takes the connection when the transaction
+ * begins, before it marks the transaction read only, and the proxy holds off taking it until the first statement.
+ *
+ * @author karanm
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(DataSourceRoute.PRIMARY, primary, DataSourceRoute.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Routes between the given pools, taking the connection of a transaction at its first statement.
+     *
+     * @param primary the pool of the primary
+     * @param replica the pool of the replicas
+     * @return the data source to give JPA
+     */
+    public static DataSource lazy(DataSource primary, DataSource replica) {
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primary, replica));
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return DataSourceRoute.PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            PrimaryStickiness.markWritten();
+            return DataSourceRoute.PRIMARY;
+        }
+        return PrimaryStickiness.isPinned() ? DataSourceRoute.PRIMARY : DataSourceRoute.REPLICA;
+    }
+}
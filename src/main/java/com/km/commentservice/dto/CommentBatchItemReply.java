@@ -0,0 +1,39 @@
+package com.km.commentservice.dto;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The result of one comment of a batch post, in the position of the comment in the request.
+ * Either the created comment or the reason it was not created is set.
+ *
+ * @author karanm
+ */
+@Builder
+@Getter
+@ToString
+public class CommentBatchItemReply implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2381797146521935067L;
+
+    @JsonProperty("index")
+    Integer index;
+
+    @JsonProperty("ref")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String ref;
+
+    @JsonProperty("comment")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    CommentReply comment;
+
+    @JsonProperty("error")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String error;
+}
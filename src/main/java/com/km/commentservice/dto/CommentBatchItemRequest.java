@@ -0,0 +1,20 @@
+package com.km.commentservice.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One comment of a batch post. The parent is either an existing comment (parentId, 0 for the top level) or a comment
+ * earlier in the same batch, referenced by the ref it was given (parentRef).
+ *
+ * @author karanm
+ */
+@Getter
+@Setter
+@ToString
+public class CommentBatchItemRequest extends CommentRequest {
+    private Integer parentId;
+    private String ref;
+    private String parentRef;
+}
@@ -0,0 +1,33 @@
+package com.km.commentservice.dto;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @author karanm
+ */
+@Builder
+@Getter
+@ToString
+public class CommentBatchReply implements Serializable {
+    @Serial
+    private static final long serialVersionUID = -4508519846473260398L;
+
+    @JsonProperty("size")
+    Integer size;
+
+    @JsonProperty("created")
+    Integer created;
+
+    @JsonProperty("failed")
+    Integer failed;
+
+    @JsonProperty("results")
+    List<CommentBatchItemReply> results;
+}
@@ -0,0 +1,42 @@
+package com.km.commentservice.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.km.commentservice.exception.BadRequestException;
+
+import static com.km.commentservice.Constants.INVALID_CURSOR;
+
+/**
+ * Position of the last comment of a page, handed to clients as an opaque token to seek to the next page.
+ *
+ * @author karanm
+ */
+public record CommentCursor(String path, Integer id) {
+    private static final String DELIMITER = ":";
+
+    public String encode() {
+        String raw = path + DELIMITER + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     *
+     * @param token the token sent by the client
+     * @return the decoded cursor
+     * @throws BadRequestException if the token is malformed
+     */
+    public static CommentCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int delimiterIndex = raw.lastIndexOf(DELIMITER);
+            if (delimiterIndex <= 0) {
+                throw new BadRequestException(INVALID_CURSOR);
+            }
+            return new CommentCursor(raw.substring(0, delimiterIndex), Integer.parseInt(raw.substring(delimiterIndex + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(INVALID_CURSOR, e);
+        }
+    }
+}
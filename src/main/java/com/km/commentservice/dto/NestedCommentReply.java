@@ -51,6 +51,10 @@ public class NestedCommentReply implements Serializable {
     @JsonInclude(Include.NON_NULL)
     Integer maxDepth;
 
+    @JsonProperty("nextCursor")
+    @JsonInclude(Include.NON_NULL)
+    String nextCursor;
+
     public NestedCommentReply withPageNo(Integer pageNo) {
         this.pageNo = pageNo;
         return this;
@@ -71,6 +75,11 @@ public class NestedCommentReply implements Serializable {
         return this;
     }
 
+    public NestedCommentReply withNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+        return this;
+    }
+
     public void addReply(NestedCommentReply nestedCommentReply) {
         nestedCommentReplies.add(nestedCommentReply);
     }
@@ -0,0 +1,41 @@
+package com.km.commentservice.dto;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.km.commentservice.model.ReactionType;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The result of one reaction of a batch post, in the position of the reaction in the request.
+ * The error is set when the reaction was not applied.
+ *
+ * @author karanm
+ */
+@Builder
+@Getter
+@ToString
+public class ReactionBatchItemReply implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 6614079534158532861L;
+
+    @JsonProperty("index")
+    Integer index;
+
+    @JsonProperty("commentId")
+    Integer commentId;
+
+    @JsonProperty("user")
+    String user;
+
+    @JsonProperty("reactionType")
+    ReactionType reactionType;
+
+    @JsonProperty("error")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String error;
+}
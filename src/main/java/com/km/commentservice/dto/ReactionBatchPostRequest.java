@@ -0,0 +1,20 @@
+package com.km.commentservice.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * @author karanm
+ */
+@Getter
+@Setter
+@ToString
+public class ReactionBatchPostRequest {
+    @NotEmpty(message = "reactions are required")
+    private List<@Valid ReactionRequest> reactions;
+}
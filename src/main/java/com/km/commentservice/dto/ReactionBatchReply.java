@@ -0,0 +1,33 @@
+package com.km.commentservice.dto;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @author karanm
+ */
+@Builder
+@Getter
+@ToString
+public class ReactionBatchReply implements Serializable {
+    @Serial
+    private static final long serialVersionUID = -1937446026284751306L;
+
+    @JsonProperty("size")
+    Integer size;
+
+    @JsonProperty("applied")
+    Integer applied;
+
+    @JsonProperty("failed")
+    Integer failed;
+
+    @JsonProperty("results")
+    List<ReactionBatchItemReply> results;
+}
@@ -0,0 +1,32 @@
+package com.km.commentservice.exception;
+
+import java.io.Serial;
+
+/**
+ * @author karanm
+ */
+public class BadRequestException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = -2950614937251850274L;
+
+    public BadRequestException() {
+        super();
+    }
+
+    public BadRequestException(String message, Throwable cause, boolean enableSuppression,
+                               boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+    public BadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+
+    public BadRequestException(Throwable cause) {
+        super(cause);
+    }
+}
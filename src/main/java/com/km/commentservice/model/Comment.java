@@ -12,7 +12,11 @@ import lombok.ToString;
  * @author karanm
  */
 @Entity
-@Table(name = "comment")
+@Table(name = "comment", indexes = {
+        @Index(name = "idx_comment_path_level", columnList = "path, level"),
+        @Index(name = "idx_comment_level_path", columnList = "level, path, id"),
+        @Index(name = "idx_comment_parent_id", columnList = "parent_id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -21,8 +25,8 @@ public class Comment extends BaseEntityWithoutId {
     @Serial
     private static final long serialVersionUID = -5766454318723967181L;
 
+    // Assigned by CommentIdAllocator before the insert, so the path can be written with it
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
     @Column(name = "id", updatable = false, nullable = false)
     private int id;
 
@@ -33,7 +37,8 @@ public class Comment extends BaseEntityWithoutId {
     private int parentId;
 
 
-    @Column(name = "path", columnDefinition = "TEXT")
+    // Short enough for (level, path) to be indexed, see 003-query-indexes.xml
+    @Column(name = "path", length = CommentPath.MAX_LENGTH)
     private String path;
 
     @Column(name = "level")
@@ -44,4 +49,8 @@ public class Comment extends BaseEntityWithoutId {
 
     @Column(name = "is_deleted")
     private Boolean isDeleted = false;
+
+    // Number of replies below this comment at any depth, kept up to date on every post
+    @Column(name = "descendant_count", nullable = false)
+    private Long descendantCount = 0L;
 }
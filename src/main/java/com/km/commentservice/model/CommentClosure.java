@@ -0,0 +1,32 @@
+package com.km.commentservice.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * One row of the comment closure table. Every comment has a row for itself at depth 0
+ * and one row for each of its ancestors, with the depth being the distance to that ancestor.
+ *
+ * @author karanm
+ */
+@Entity
+@Table(name = "comment_closure", indexes = {
+        @Index(name = "idx_comment_closure_ancestor_depth", columnList = "ancestor_id, depth, descendant_id"),
+        @Index(name = "idx_comment_closure_descendant", columnList = "descendant_id")
+})
+@Data
+@ToString
+public class CommentClosure implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 4604571396268817309L;
+
+    @EmbeddedId
+    private CommentClosureId id;
+
+    @Column(name = "depth", nullable = false)
+    private Integer depth;
+}
@@ -0,0 +1,30 @@
+package com.km.commentservice.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * @author karanm
+ */
+@Getter
+@Setter
+@Embeddable
+@ToString
+@EqualsAndHashCode
+public class CommentClosureId implements Serializable {
+    @Serial
+    private static final long serialVersionUID = -3180425416327019127L;
+
+    @Column(name = "ancestor_id", nullable = false)
+    private Integer ancestorId;
+
+    @Column(name = "descendant_id", nullable = false)
+    private Integer descendantId;
+}
@@ -0,0 +1,15 @@
+package com.km.commentservice.model;
+
+/**
+ * The columns of a comment that lookups check before reading or writing below it, without the body. Read through
+ * {@code CommentDAO.findHeaderById} and {@code findHeadersByIdIn}, which select these columns only and leave nothing in
+ * the persistence context.
+ *
+ * @author karanm
+ */
+public record CommentHeader(int id, int parentId, String path, int level, Boolean isDeleted, String user) {
+    public static CommentHeader of(Comment comment) {
+        return new CommentHeader(comment.getId(), comment.getParentId(), comment.getPath(), comment.getLevel(),
+                comment.getIsDeleted(), comment.getUser());
+    }
+}
@@ -0,0 +1,38 @@
+package com.km.commentservice.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * The single row holding the next comment id that has not been handed out to a node yet.
+ *
+ * @author karanm
+ */
+@Entity
+@Table(name = "comment_id_sequence")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class CommentIdSequence implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 4410360934285416743L;
+
+    public static final Integer SEQUENCE_ID = 1;
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private Integer id;
+
+    @Column(name = "next_val", nullable = false)
+    private Long nextVal;
+}
@@ -0,0 +1,106 @@
+package com.km.commentservice.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for the materialized {@link Comment#getPath()} of a comment.
+ * A path is the list of ids from the top level comment down to the comment itself, each written as a slash followed by
+ * the id in base 36, zero padded to six digits, e.g. {@code /00000c/00001b}. As every segment has the same width, paths
+ * compare like the id lists they encode: a comment sorts directly before its descendants, siblings sort by id, and the
+ * path of a comment is a prefix of the paths of its descendants only.
+ * <p>
+ * Legacy paths written before this encoding join the decimal ids with dashes, e.g. {@code 12-39}. They never start with
+ * a slash, are still read, and are rewritten by CommentPathMigrator. Replies to a comment with a legacy path get a legacy
+ * path as well, so a thread never mixes both encodings once the migrator has moved past it.
+ *
+ * @author karanm
+ */
+public final class CommentPath {
+    private CommentPath() {}
+
+    public static final String SEPARATOR = "/";
+
+    public static final String LEGACY_SEPARATOR = "-";
+
+    // Sorts after every fixed width path and before every legacy path, whose top level ids start with a digit other than 0
+    public static final String LEGACY_PATHS_START = "0";
+
+    // Six base 36 digits hold every non negative int
+    private static final int RADIX = 36;
+    private static final int SEGMENT_DIGITS = 6;
+    private static final int SEGMENT_LENGTH = SEPARATOR.length() + SEGMENT_DIGITS;
+
+    // Length of the path column, 108 levels of the fixed width encoding
+    public static final int MAX_LENGTH = 760;
+
+    /**
+     * Builds the path of a comment from the path of its parent.
+     *
+     * @param parentPath the path of the parent, or null for a top level comment
+     * @param commentId the id of the comment
+     * @return the path of the comment, in the encoding of the parent path
+     */
+    public static String of(String parentPath, int commentId) {
+        if (parentPath == null || parentPath.isEmpty()) {
+            return segment(commentId);
+        }
+        if (isLegacy(parentPath)) {
+            return parentPath + LEGACY_SEPARATOR + commentId;
+        }
+        return parentPath + segment(commentId);
+    }
+
+    /**
+     * Returns the ids of all ancestors of the comment owning the path, top level comment first.
+     * The comment itself is not included.
+     *
+     * @param path the path of the comment, in either encoding
+     * @return the ancestor ids
+     */
+    public static List<Integer> ancestorIds(String path) {
+        List<Integer> ids = new ArrayList<>();
+        if (path == null || path.isEmpty()) {
+            return ids;
+        }
+        if (isLegacy(path)) {
+            String[] segments = path.split(LEGACY_SEPARATOR);
+            for (int i = 0; i < segments.length - 1; i++) {
+                ids.add(Integer.parseInt(segments[i]));
+            }
+            return ids;
+        }
+        for (int start = 0; start + SEGMENT_LENGTH < path.length(); start += SEGMENT_LENGTH) {
+            ids.add(Integer.parseInt(path, start + SEPARATOR.length(), start + SEGMENT_LENGTH, RADIX));
+        }
+        return ids;
+    }
+
+    /**
+     * @param path a path
+     * @return whether the path is in the legacy dash joined encoding
+     */
+    public static boolean isLegacy(String path) {
+        return path != null && !path.isEmpty() && !path.startsWith(SEPARATOR);
+    }
+
+    /**
+     * Rewrites a legacy path in the fixed width encoding.
+     *
+     * @param legacyPath a path in the dash joined encoding
+     * @return the same ids in the fixed width encoding
+     */
+    public static String fromLegacy(String legacyPath) {
+        String[] segments = legacyPath.split(LEGACY_SEPARATOR);
+        StringBuilder path = new StringBuilder(segments.length * SEGMENT_LENGTH);
+        for (String segment : segments) {
+            path.append(segment(Integer.parseInt(segment)));
+        }
+        return path.toString();
+    }
+
+    private static String segment(int commentId) {
+        String digits = Integer.toString(commentId, RADIX);
+        return SEPARATOR + "0".repeat(SEGMENT_DIGITS - digits.length()) + digits;
+    }
+}
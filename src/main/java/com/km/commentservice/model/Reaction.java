@@ -10,7 +10,9 @@ import lombok.ToString;
  * @author karanm
  */
 @Entity
-@Table(name = "reaction")
+@Table(name = "reaction", indexes = {
+        @Index(name = "idx_reaction_comment_type_updated", columnList = "comment_id, reaction_type, updated_at")
+})
 @Data
 @ToString
 public class Reaction extends BaseEntityWithoutId {
@@ -5,6 +5,7 @@ import java.io.Serializable;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Embeddable;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -16,6 +17,7 @@ import lombok.ToString;
 @Setter
 @Embeddable
 @ToString
+@EqualsAndHashCode
 public class ReactionCountId implements Serializable {
     @Serial
     private static final long serialVersionUID = -2479706211917755885L;
@@ -4,6 +4,7 @@ import java.io.Serializable;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Embeddable;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -15,6 +16,7 @@ import lombok.ToString;
 @Setter
 @Embeddable
 @ToString
+@EqualsAndHashCode
 public class ReactionId implements Serializable {
     private static final long serialVersionUID = 9064756837067718516L;
 
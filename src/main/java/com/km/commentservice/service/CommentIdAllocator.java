@@ -0,0 +1,127 @@
+package com.km.commentservice.service;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import com.km.commentservice.model.CommentIdSequence;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Hands out comment ids from blocks reserved in the comment_id_sequence table, so the id of a new comment (and with it
+ * its path) is known before the comment is inserted. Only one in block size ids costs a round trip to the database.
+ * <p>
+ * Blocks are reserved in a transaction of their own that commits right away, a rolled back post does not hand its block
+ * back and ids left in a block when the node stops are skipped. Ids are unique but not gapless or ordered across nodes.
+ * <p>
+ * The reserving transaction runs on a pool of one connection kept for it, not on the application pool. The caller
+ * already holds an application connection for its own transaction, and the callers queued on the lock hold theirs, so
+ * with the application pool exhausted a second connection from it would never free up.
+ *
+ * @author karanm
+ */
+@Component
+public class CommentIdAllocator {
+    Logger logger = LoggerFactory.getLogger(CommentIdAllocator.class);
+
+    private static final String SELECT_FOR_UPDATE_QUERY = "SELECT next_val FROM comment_id_sequence WHERE id = ? FOR UPDATE";
+
+    private static final String UPDATE_QUERY = "UPDATE comment_id_sequence SET next_val = ? WHERE id = ?";
+
+    private static final String INSERT_QUERY = "INSERT INTO comment_id_sequence (id, next_val) VALUES (?, ?)";
+
+    private static final String MAX_COMMENT_ID_QUERY = "SELECT COALESCE(MAX(id), 0) FROM comment";
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Value("${commentservice.comment-id.block-size:100}")
+    private int blockSize = 100;
+
+    // Created from the spring.datasource properties on startup unless set before
+    private DataSource sequenceDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // The next id to hand out and the first id past the current block, guarded by the lock
+    private long nextId;
+    private long blockEnd;
+
+    @PostConstruct
+    void start() {
+        if (sequenceDataSource == null) {
+            HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            dataSource.setPoolName("commentservice-comment-id");
+            dataSource.setMaximumPoolSize(1);
+            dataSource.setMinimumIdle(0);
+            sequenceDataSource = dataSource;
+        }
+        jdbcTemplate = new JdbcTemplate(sequenceDataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(sequenceDataSource));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sequenceDataSource instanceof HikariDataSource dataSource) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * @return an id no other comment has or will get
+     */
+    public int nextId() {
+        lock.lock();
+        try {
+            if (nextId == blockEnd) {
+                nextId = reserveBlock();
+                blockEnd = nextId + blockSize;
+            }
+            return Math.toIntExact(nextId++);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long reserveBlock() {
+        try {
+            return transactionTemplate.execute(status -> reserveBlockInTransaction());
+        } catch (DataIntegrityViolationException e) {
+            // Another node created the sequence row at the same time, reserve from the row it created
+            logger.info("Comment id sequence was created concurrently, reserving again");
+            return transactionTemplate.execute(status -> reserveBlockInTransaction());
+        }
+    }
+
+    private long reserveBlockInTransaction() {
+        List<Long> nextVals = jdbcTemplate.queryForList(SELECT_FOR_UPDATE_QUERY, Long.class, CommentIdSequence.SEQUENCE_ID);
+        long start;
+        if (nextVals.isEmpty()) {
+            // Databases created before the sequence table continue after the highest existing id
+            start = jdbcTemplate.queryForObject(MAX_COMMENT_ID_QUERY, Long.class) + 1L;
+            jdbcTemplate.update(INSERT_QUERY, CommentIdSequence.SEQUENCE_ID, start + blockSize);
+        } else {
+            start = nextVals.get(0);
+            jdbcTemplate.update(UPDATE_QUERY, start + blockSize, CommentIdSequence.SEQUENCE_ID);
+        }
+        logger.info("Reserved comment ids {} to {}", start, start + blockSize - 1);
+        return start;
+    }
+}
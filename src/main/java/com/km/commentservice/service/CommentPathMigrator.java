@@ -0,0 +1,113 @@
+package com.km.commentservice.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.model.CommentPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Rewrites the legacy dash joined comment paths in the fixed width encoding of CommentPath while the application keeps
+ * serving requests. Enabled with {@code commentservice.path.migrate-on-startup=true}.
+ * <p>
+ * The legacy paths are read in path order, a batch at a time, and each batch is rewritten in a transaction of its own,
+ * so threads are migrated one after the other. A path only depends on the ids in it, so a comment can be migrated
+ * independently of its parent. Replies posted to a not yet migrated thread get a legacy path and are picked up by a
+ * later pass; the migration ends with a pass that finds nothing left to rewrite. Until then a thread that is split
+ * across two batches, or that received such a reply, briefly mixes both encodings, and its tree and level pages can
+ * miss the comments in the other encoding.
+ *
+ * @author karanm
+ */
+@Component
+@ConditionalOnProperty(name = "commentservice.path.migrate-on-startup", havingValue = "true")
+public class CommentPathMigrator implements ApplicationRunner {
+    Logger logger = LoggerFactory.getLogger(CommentPathMigrator.class);
+
+    @Autowired
+    private CommentDAO commentDAO;
+
+    @Autowired
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${commentservice.path.migration-batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread thread = new Thread(this::migrate, "comment-path-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rewrites legacy paths until none is left.
+     *
+     * @return the number of comments migrated
+     */
+    public int migrate() {
+        logger.info("Migrating legacy comment paths in batches of {}", batchSize);
+        int total = 0;
+        int migrated;
+        try {
+            do {
+                migrated = migratePass();
+                total += migrated;
+            } while (migrated > 0);
+        } catch (RuntimeException e) {
+            logger.error("Comment path migration failed after {} comments, restart it to continue", total, e);
+            return total;
+        }
+        logger.info("Migrated {} legacy comment paths", total);
+        return total;
+    }
+
+    private int migratePass() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        String afterPath = CommentPath.LEGACY_PATHS_START;
+        int migrated = 0;
+        while (true) {
+            Map<Integer, String> legacyPaths = commentDAO.findLegacyPaths(afterPath, batchSize);
+            if (legacyPaths.isEmpty()) {
+                return migrated;
+            }
+
+            Map<Integer, String> paths = new LinkedHashMap<>();
+            legacyPaths.forEach((commentId, legacyPath) -> {
+                String path = CommentPath.fromLegacy(legacyPath);
+                if (path.length() > CommentPath.MAX_LENGTH) {
+                    logger.warn("Path of comment ID: {} does not fit the path column once migrated, keeping {}",
+                            commentId, legacyPath);
+                } else {
+                    paths.put(commentId, path);
+                }
+            });
+            if (!paths.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    commentDAO.updatePaths(paths);
+                    // Cached level pages hand out cursors with the old paths
+                    cacheInvalidator.evictCommentTrees(legacyPaths.values());
+                });
+            }
+            migrated += paths.size();
+            for (String legacyPath : legacyPaths.values()) {
+                afterPath = legacyPath;
+            }
+            logger.info("Migrated {} comment paths, up to {}", migrated, afterPath);
+        }
+    }
+}
@@ -1,26 +1,47 @@
 package com.km.commentservice.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.counter.ReactionCounter;
+import com.km.commentservice.dao.CommentClosureDAO;
 import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentBatchItemReply;
+import com.km.commentservice.dto.CommentBatchItemRequest;
+import com.km.commentservice.dto.CommentBatchReply;
+import com.km.commentservice.dto.CommentCursor;
 import com.km.commentservice.dto.CommentPutRequest;
 import com.km.commentservice.dto.CommentReply;
 import com.km.commentservice.dto.NestedCommentReply;
 import com.km.commentservice.dto.CommentPostRequest;
+import com.km.commentservice.exception.BadRequestException;
 import com.km.commentservice.exception.OperationNotAllowedException;
 import com.km.commentservice.exception.ResourceNotFoundException;
 import com.km.commentservice.model.Comment;
-import jakarta.transaction.Transactional;
+import com.km.commentservice.model.CommentClosure;
+import com.km.commentservice.model.CommentClosureId;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.model.CommentPath;
+import com.km.commentservice.snapshot.CommentTreeSnapshotStore;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import static com.km.commentservice.Constants.*;
 
@@ -32,26 +53,49 @@ import static com.km.commentservice.Constants.*;
  * @author karanm
  */
 @Service
+@Timed("commentservice.service")
 public class CommentService {
     Logger logger = LoggerFactory.getLogger(CommentService.class);
 
     @Autowired
     private CommentDAO commentDAO;
 
+    @Autowired
+    private CommentClosureDAO commentClosureDAO;
+
+    @Autowired
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired
+    private ReactionCounter reactionCounter;
+
+    @Autowired
+    private CommentIdAllocator commentIdAllocator;
+
+    @Autowired
+    private CommentTreeMetrics commentTreeMetrics;
+
+    @Autowired
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
+    @Value("${commentservice.comment-batch.max-size:5000}")
+    private int maxBatchSize = 5000;
+
     /**
      * This method retrieves a comment by its ID.
      * It uses the CommentDAO to fetch the comment and constructs a reply.
      * @param commentId The ID of the comment.
      * @return A reply containing the data of the comment.
      */
+    @Transactional(readOnly = true)
     public CommentReply getCommentById(Integer commentId) {
-        logger.info("Fetching comment with ID: {}", commentId);
+        logger.debug("Fetching comment with ID: {}", commentId);
         Optional<Comment> commentOptional = commentDAO.findById(commentId);
         if(commentOptional.isEmpty()) {
             logger.error("Comment with ID: {} not found", commentId);
             throw new ResourceNotFoundException(COMMENT_NOT_FOUND);
         }
-        logger.info("Successfully fetched comment with ID: {}", commentId);
+        logger.debug("Successfully fetched comment with ID: {}", commentId);
         return constructCommentReply(commentOptional.get(), false);
     }
 
@@ -62,24 +106,71 @@ public class CommentService {
      * @param maxDepth The maximum depth of the comment tree to fetch.
      * @return A nested reply of comments.
      */
+    @Transactional(readOnly = true)
     public NestedCommentReply getCommentTreeById(Integer parentId, Integer maxDepth) {
-        logger.info("Fetching comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+        logger.debug("Fetching comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
         List<CommentReply> commentTree = new ArrayList<>();
 
-        Optional<Comment> commentOptional = commentDAO.findById(parentId);
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(parentId);
         if(commentOptional.isEmpty() && parentId != 0) {
             logger.error("Parent comment with ID: {} not found", parentId);
             return new NestedCommentReply();
         }
 
-        String path = parentId != 0 ? commentOptional.get().getPath() : "";
-        Integer curDepth = parentId != 0 ? commentOptional.get().getLevel() : 0;
+        String path = parentId != 0 ? commentOptional.get().path() : "";
+        Integer curDepth = parentId != 0 ? commentOptional.get().level() : 0;
 
-        commentDAO.getCommentTreeById(path, parentId, curDepth + maxDepth).forEach(commentTree::add);
-        logger.info("Successfully fetched comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+        // Trees below a comment come from the snapshot of its thread when there is one, the top level spans all threads
+        Optional<List<CommentReply>> snapshotTree = parentId != 0
+                ? commentTreeSnapshotStore.getTree(commentOptional.get(), curDepth + maxDepth) : Optional.empty();
+        if (snapshotTree.isPresent()) {
+            commentTree.addAll(snapshotTree.get());
+        } else {
+            commentDAO.getCommentTreeById(path, parentId, curDepth + maxDepth).forEach(commentTree::add);
+        }
+        commentTree.forEach(reactionCounter::applyPendingDeltas);
+        commentTreeMetrics.recordTree(CommentTreeMetrics.FULL_TREE_QUERY, commentTree);
+        logger.debug("Successfully fetched comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
         return createNestedCommentReply(commentTree).withMaxDepth(maxDepth);
     }
 
+    /**
+     * This method writes a tree of comments starting from a parent comment as JSON while the rows are read.
+     * The JSON is the same as the serialized reply of getCommentTreeById, but neither the rows nor the nested reply
+     * are held in memory.
+     * @param parentId The ID of the parent comment.
+     * @param maxDepth The maximum depth of the comment tree to fetch.
+     * @param generator The generator the nested reply is written to.
+     */
+    @Transactional(readOnly = true)
+    public void streamCommentTreeById(Integer parentId, Integer maxDepth, JsonGenerator generator) throws IOException {
+        logger.debug("Streaming comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(parentId);
+        if(commentOptional.isEmpty() && parentId != 0) {
+            logger.error("Parent comment with ID: {} not found", parentId);
+            generator.writeStartObject();
+            generator.writeEndObject();
+            generator.flush();
+            return;
+        }
+
+        String path = parentId != 0 ? commentOptional.get().path() : "";
+        Integer curDepth = parentId != 0 ? commentOptional.get().level() : 0;
+
+        int[] rowCount = new int[1];
+        try (Stream<CommentReply> rows = commentDAO.streamCommentTreeById(path, parentId, curDepth + maxDepth)) {
+            Stream<CommentReply> counted = rows.map(commentReply -> {
+                reactionCounter.applyPendingDeltas(commentReply);
+                rowCount[0]++;
+                return commentReply;
+            });
+            CommentTreeStreamWriter.write(counted.iterator(), generator, maxDepth);
+        }
+        commentTreeMetrics.recordRows(CommentTreeMetrics.FULL_TREE_STREAM_QUERY, rowCount[0]);
+        logger.debug("Successfully streamed comment tree with parent ID: {} and max depth: {}", parentId, maxDepth);
+    }
+
     /**
      * This method retrieves comments at a specific level in the comment tree.
      * It uses the CommentDAO to fetch the comments and constructs a nested reply.
@@ -88,25 +179,55 @@ public class CommentService {
      * @param pageSize The size of the page for pagination.
      * @return A nested reply of comments.
      */
+    @Transactional(readOnly = true)
     public NestedCommentReply getCommentsAtLevel(Integer parentId, Integer pageNo, Integer pageSize) {
-        logger.info("Fetching comments at level for parent ID: {} with page number: {} and page size: {}",
-                parentId, pageNo, pageSize);
+        return getCommentsAtLevel(parentId, pageNo, pageSize, null);
+    }
+
+    /**
+     * This method retrieves comments at a specific level in the comment tree.
+     * Without a cursor the page is picked by page number, with a cursor the page directly after the cursor is returned
+     * and the page number is ignored. A full page carries the cursor for the page after it.
+     * @param parentId The ID of the parent comment.
+     * @param pageNo The page number for pagination.
+     * @param pageSize The size of the page for pagination.
+     * @param cursor The nextCursor of the previous page, or null.
+     * @return A nested reply of comments.
+     */
+    @Transactional(readOnly = true)
+    public NestedCommentReply getCommentsAtLevel(Integer parentId, Integer pageNo, Integer pageSize, String cursor) {
+        logger.debug("Fetching comments at level for parent ID: {} with page number: {}, page size: {} and cursor: {}",
+                parentId, pageNo, pageSize, cursor);
         List<CommentReply> commentTree = new ArrayList<>();
 
-        Optional<Comment> commentOptional = commentDAO.findById(parentId);
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(parentId);
         if(commentOptional.isEmpty() && parentId != 0) {
             logger.error("Parent comment with ID: {} not found", parentId);
             return new NestedCommentReply();
         }
 
-        String path = parentId != 0 ? commentOptional.get().getPath() : "";
-        int level = parentId != 0 ? commentOptional.get().getLevel() : -1;
-        Pageable pageable = PageRequest.of(pageNo, pageSize);
-
-        commentDAO.getCommentsAtLevel(path, level+1, pageable).forEach(commentTree::add);
-        logger.info("Successfully fetched comments at level for parent ID: {} with page number: {} and page size: {}",
-                parentId, pageNo, pageSize);
-        return createNestedCommentReply(commentTree).withPageNo(pageNo).withPageSize(pageSize).withSize(commentTree.size());
+        String path = parentId != 0 ? commentOptional.get().path() : "";
+        int level = parentId != 0 ? commentOptional.get().level() : -1;
+        if (cursor != null) {
+            CommentCursor after = CommentCursor.decode(cursor);
+            commentDAO.getCommentsAtLevelAfter(path, level+1, after.path(), after.id(), pageSize).forEach(commentTree::add);
+        } else {
+            Pageable pageable = PageRequest.of(pageNo, pageSize);
+            commentDAO.getCommentsAtLevel(path, level+1, pageable).forEach(commentTree::add);
+        }
+        commentTree.forEach(reactionCounter::applyPendingDeltas);
+        commentTreeMetrics.recordRows(CommentTreeMetrics.NEXT_LEVEL_QUERY, commentTree.size());
+
+        String nextCursor = null;
+        if (!commentTree.isEmpty() && commentTree.size() == pageSize) {
+            // All comments of a level page are children of the parent, so their path follows from the parent path
+            Integer lastId = commentTree.get(commentTree.size() - 1).getId();
+            nextCursor = new CommentCursor(CommentPath.of(path, lastId), lastId).encode();
+        }
+        logger.debug("Successfully fetched comments at level for parent ID: {} with page number: {}, page size: {} and cursor: {}",
+                parentId, pageNo, pageSize, cursor);
+        return createNestedCommentReply(commentTree).withPageNo(cursor == null ? pageNo : null).withPageSize(pageSize)
+                .withSize(commentTree.size()).withNextCursor(nextCursor);
     }
 
     /**
@@ -117,9 +238,8 @@ public class CommentService {
      */
     @Transactional
     public CommentReply postComment(CommentPostRequest commentPostRequest) {
-        logger.info("Posting a new comment: {}", commentPostRequest);
-        Optional<Comment> parentCommentOptional = commentDAO.findById(commentPostRequest.getParentId());
-        Comment parentComment = parentCommentOptional.orElse(null);
+        logger.debug("Posting a new comment: {}", commentPostRequest);
+        CommentHeader parentComment = commentDAO.findHeaderById(commentPostRequest.getParentId()).orElse(null);
 
         Comment comment = new Comment();
         comment.setBody(commentPostRequest.getBody());
@@ -127,11 +247,11 @@ public class CommentService {
         comment.setUser(commentPostRequest.getUser());
 
         if (parentComment != null) {
-            if(parentComment.getIsDeleted()) {
+            if(parentComment.isDeleted()) {
                 logger.error("Parent comment with ID: {} is deleted", commentPostRequest.getParentId());
                 throw new ResourceNotFoundException(PARENT_DELETED);
             }
-            comment.setLevel(parentCommentOptional.get().getLevel() + 1);
+            comment.setLevel(parentComment.level() + 1);
         } else if (commentPostRequest.getParentId() == 0){
             //Allowing to add parent at top most level
             comment.setLevel(0);
@@ -140,12 +260,156 @@ public class CommentService {
             throw new ResourceNotFoundException(PARENT_NOT_FOUND);
         }
 
-        Comment newComment = commentDAO.save(comment);
-        newComment.setPath(parentComment != null ? parentComment.getPath() + "-" + newComment.getId(): new String()
-                + newComment.getId());
-        logger.info("Successfully posted a new comment with ID: {} and updating path with: {}", newComment.getId(),
-                newComment.getPath());
-        return constructCommentReply(commentDAO.save(newComment), false);
+        // The id is known before the insert, so the comment is inserted once with its path
+        comment.setId(commentIdAllocator.nextId());
+        comment.setPath(CommentPath.of(parentComment != null ? parentComment.path() : null, comment.getId()));
+        if (comment.getPath().length() > CommentPath.MAX_LENGTH) {
+            logger.error("Path of a reply to comment with ID: {} does not fit the path column", commentPostRequest.getParentId());
+            throw new BadRequestException(PATH_TOO_LONG);
+        }
+        commentDAO.persist(comment);
+        logger.debug("Successfully posted a new comment with ID: {} and path: {}", comment.getId(), comment.getPath());
+        commentClosureDAO.insertClosureRows(comment.getId(), comment.getParentId());
+
+        List<Integer> ancestorIds = CommentPath.ancestorIds(comment.getPath());
+        if (!ancestorIds.isEmpty()) {
+            commentDAO.updateDescendantCount(ancestorIds, 1L);
+        }
+        // Patch the snapshot before the cached trees are evicted, both run after commit in this order
+        commentTreeSnapshotStore.commentsChanged(List.of(comment));
+        cacheInvalidator.evictCommentTree(comment.getPath());
+        return constructCommentReply(comment, false);
+    }
+
+    /**
+     * This method posts a batch of new comments in one transaction.
+     * A comment can reply to an existing comment or to a comment earlier in the batch, referenced by its ref. Parents
+     * outside the batch are read in one query, paths, levels, closure rows and descendant counts are worked out in
+     * memory, and the inserts are sent as JDBC batches. A comment whose parent cannot be resolved is reported as failed
+     * in its result, the other comments are still created.
+     * @param commentBatchItemRequests The comments to post, parents before their replies.
+     * @return A reply with one result per comment, in the order of the request.
+     */
+    @Transactional
+    public CommentBatchReply postComments(List<CommentBatchItemRequest> commentBatchItemRequests) {
+        logger.debug("Posting a batch of {} comments", commentBatchItemRequests.size());
+        if (commentBatchItemRequests.size() > maxBatchSize) {
+            logger.error("Batch of {} comments is larger than the maximum of {}", commentBatchItemRequests.size(), maxBatchSize);
+            throw new BadRequestException(BATCH_TOO_LARGE);
+        }
+
+        Set<Integer> existingParentIds = new HashSet<>();
+        for (CommentBatchItemRequest request : commentBatchItemRequests) {
+            if (request.getParentRef() == null && request.getParentId() != null && request.getParentId() != 0) {
+                existingParentIds.add(request.getParentId());
+            }
+        }
+        Map<Integer, CommentHeader> existingParents = new HashMap<>();
+        if (!existingParentIds.isEmpty()) {
+            commentDAO.findHeadersByIdIn(existingParentIds).forEach(parent -> existingParents.put(parent.id(), parent));
+        }
+
+        Map<String, CommentHeader> commentsByRef = new HashMap<>();
+        Set<String> failedRefs = new HashSet<>();
+        Map<Integer, Comment> newComments = new LinkedHashMap<>();
+        List<CommentBatchItemReply> results = new ArrayList<>(commentBatchItemRequests.size());
+        for (int index = 0; index < commentBatchItemRequests.size(); index++) {
+            CommentBatchItemRequest request = commentBatchItemRequests.get(index);
+            String ref = request.getRef();
+            CommentHeader parentComment = null;
+            String error = null;
+
+            if (ref != null && (commentsByRef.containsKey(ref) || failedRefs.contains(ref))) {
+                error = DUPLICATE_REF;
+            } else if (request.getParentRef() != null && request.getParentId() != null) {
+                error = PARENT_ID_AND_REF;
+            } else if (request.getParentRef() != null) {
+                parentComment = commentsByRef.get(request.getParentRef());
+                if (parentComment == null) {
+                    error = failedRefs.contains(request.getParentRef()) ? PARENT_FAILED : PARENT_REF_NOT_FOUND;
+                }
+            } else if (request.getParentId() == null) {
+                error = PARENT_REQUIRED;
+            } else if (request.getParentId() != 0) {
+                parentComment = existingParents.get(request.getParentId());
+                if (parentComment == null) {
+                    error = PARENT_NOT_FOUND;
+                } else if (parentComment.isDeleted()) {
+                    error = PARENT_DELETED;
+                }
+            }
+
+            // The id is allocated before the path is checked, a rejected reply leaves a gap in the ids
+            int commentId = 0;
+            String path = null;
+            if (error == null) {
+                commentId = commentIdAllocator.nextId();
+                path = CommentPath.of(parentComment != null ? parentComment.path() : null, commentId);
+                if (path.length() > CommentPath.MAX_LENGTH) {
+                    error = PATH_TOO_LONG;
+                }
+            }
+
+            if (error != null) {
+                logger.error("Comment {} of the batch with ref: {} not posted: {}", index, ref, error);
+                if (ref != null) {
+                    failedRefs.add(ref);
+                }
+                results.add(CommentBatchItemReply.builder().index(index).ref(ref).error(error).build());
+                continue;
+            }
+
+            Comment comment = new Comment();
+            comment.setBody(request.getBody());
+            comment.setUser(request.getUser());
+            comment.setId(commentId);
+            comment.setParentId(parentComment != null ? parentComment.id() : 0);
+            comment.setLevel(parentComment != null ? parentComment.level() + 1 : 0);
+            comment.setPath(path);
+            newComments.put(comment.getId(), comment);
+            if (ref != null) {
+                commentsByRef.put(ref, CommentHeader.of(comment));
+            }
+            results.add(CommentBatchItemReply.builder().index(index).ref(ref).comment(constructCommentReply(comment, false)).build());
+        }
+
+        // Counts of new comments are set before their insert, existing ancestors get one update per distinct delta
+        Map<Integer, Long> existingAncestorDeltas = new HashMap<>();
+        List<CommentClosure> commentClosures = new ArrayList<>();
+        for (Comment comment : newComments.values()) {
+            List<Integer> ancestorIds = CommentPath.ancestorIds(comment.getPath());
+            for (int i = 0; i < ancestorIds.size(); i++) {
+                Integer ancestorId = ancestorIds.get(i);
+                Comment newAncestor = newComments.get(ancestorId);
+                if (newAncestor != null) {
+                    newAncestor.setDescendantCount(newAncestor.getDescendantCount() + 1);
+                } else {
+                    existingAncestorDeltas.merge(ancestorId, 1L, Long::sum);
+                }
+                commentClosures.add(createCommentClosure(ancestorId, comment.getId(), ancestorIds.size() - i));
+            }
+            commentClosures.add(createCommentClosure(comment.getId(), comment.getId(), 0));
+        }
+
+        newComments.values().forEach(commentDAO::persist);
+        commentClosureDAO.persistAll(commentClosures);
+
+        Map<Long, List<Integer>> ancestorIdsByDelta = new HashMap<>();
+        existingAncestorDeltas.forEach((ancestorId, delta) ->
+                ancestorIdsByDelta.computeIfAbsent(delta, key -> new ArrayList<>()).add(ancestorId));
+        ancestorIdsByDelta.forEach((delta, ancestorIds) -> commentDAO.updateDescendantCount(ancestorIds, delta));
+
+        if (!newComments.isEmpty()) {
+            commentTreeSnapshotStore.commentsChanged(newComments.values());
+            cacheInvalidator.evictCommentTrees(newComments.values().stream().map(Comment::getPath).toList());
+        }
+        logger.debug("Successfully posted {} of a batch of {} comments", newComments.size(), commentBatchItemRequests.size());
+        return CommentBatchReply.builder()
+                .size(commentBatchItemRequests.size())
+                .created(newComments.size())
+                .failed(commentBatchItemRequests.size() - newComments.size())
+                .results(results)
+                .build();
     }
 
     /**
@@ -156,7 +420,7 @@ public class CommentService {
      */
     @Transactional
     public CommentReply putComment(CommentPutRequest commentPutRequest) {
-        logger.info("Updating a comment: {}", commentPutRequest);
+        logger.debug("Updating a comment: {}", commentPutRequest);
         Optional<Comment> commentOptional = commentDAO.findById(commentPutRequest.getCommentId());
 
         Comment comment = commentOptional.orElse(null);
@@ -172,7 +436,9 @@ public class CommentService {
 
         comment.setBody(commentPutRequest.getBody());
         Comment updatedComment = commentDAO.save(comment);
-        logger.info("Successfully updated comment with ID: {}", updatedComment.getId());
+        commentTreeSnapshotStore.commentsChanged(List.of(updatedComment));
+        cacheInvalidator.evictCommentTree(updatedComment.getPath());
+        logger.debug("Successfully updated comment with ID: {}", updatedComment.getId());
         return constructCommentReply(updatedComment, true);
     }
 
@@ -185,7 +451,7 @@ public class CommentService {
      */
     @Transactional
     public CommentReply deleteComment(Integer commentId, String user) {
-        logger.info("Deleting comment with ID: {} by user: {}", commentId, user);
+        logger.debug("Deleting comment with ID: {} by user: {}", commentId, user);
         Optional<Comment> commentOptional = commentDAO.findById(commentId);
 
         Comment comment = commentOptional.orElse(null);
@@ -198,14 +464,29 @@ public class CommentService {
             throw new OperationNotAllowedException(OPERATION_NOT_ALLOWED);
         }
 
+        // Deletes are soft, the comment stays in the tree and in the descendant count of its ancestors
         comment.setBody(COMMENT_DELETED_BY_USER);
         comment.setIsDeleted(true);
 
         Comment deletedComment = commentDAO.save(comment);
-        logger.info("Successfully deleted comment with ID: {} by user: {}", commentId, user);
+        commentTreeSnapshotStore.commentsChanged(List.of(deletedComment));
+        cacheInvalidator.evictCommentTree(deletedComment.getPath());
+        logger.debug("Successfully deleted comment with ID: {} by user: {}", commentId, user);
         return constructCommentReply(deletedComment, true);
     }
 
+    /**
+     * This method recomputes the stored descendant count of every comment.
+     * @return The number of comments updated.
+     */
+    @Transactional
+    public int rebuildDescendantCounts() {
+        logger.info("Rebuilding descendant counts");
+        int updated = commentDAO.rebuildDescendantCounts();
+        logger.info("Successfully rebuilt descendant counts for {} comments", updated);
+        return updated;
+    }
+
     /**
      * This method constructs a CommentReply object from a Comment object.
      * @param comment The Comment object.
@@ -228,43 +509,25 @@ public class CommentService {
         return commentReply;
     }
 
+    private CommentClosure createCommentClosure(Integer ancestorId, Integer descendantId, int depth) {
+        CommentClosureId commentClosureId = new CommentClosureId();
+        commentClosureId.setAncestorId(ancestorId);
+        commentClosureId.setDescendantId(descendantId);
+        CommentClosure commentClosure = new CommentClosure();
+        commentClosure.setId(commentClosureId);
+        commentClosure.setDepth(depth);
+        return commentClosure;
+    }
+
     /**
      * This method creates a nested reply of comments from a list of CommentReply objects.
-     * @param commentReplies The list of CommentReply objects.
+     * @param commentReplies The list of CommentReply objects, parents before children.
      * @return A nested reply of comments.
      */
-    private NestedCommentReply createNestedCommentReply(List<CommentReply> commentReplies) {
-        logger.info("Creating nested comment reply for a list of comment replies");
-        Map<Integer, List<CommentReply>> parentAdjList = new HashMap<>();
-        Map<Integer, CommentReply> commentReplyMap = new HashMap<>();
-
-        for (CommentReply commentReply : commentReplies) {
-            if(!parentAdjList.containsKey(commentReply.getParentId())) {
-                parentAdjList.put(commentReply.getParentId(), new ArrayList<>());
-            }
-            parentAdjList.get(commentReply.getParentId()).add(commentReply);
-            commentReplyMap.put(commentReply.getId(), commentReply);
-        }
-
-        NestedCommentReply topReply = new NestedCommentReply();
-
-        Map<Integer, NestedCommentReply> setOfReplies = new HashMap<>();
-
-        for(Map.Entry<Integer, List<CommentReply>> mapEntry : parentAdjList.entrySet()) {
-            NestedCommentReply nestedReply = setOfReplies.getOrDefault(mapEntry.getKey(), new NestedCommentReply());
-            if(commentReplyMap.containsKey(mapEntry.getKey())) {
-                nestedReply.setCommentReply(commentReplyMap.get(mapEntry.getKey()));
-            } else {
-                topReply = nestedReply;
-            }
-            for(CommentReply commentReply : mapEntry.getValue()) {
-                NestedCommentReply cn = new NestedCommentReply();
-                cn.setCommentReply(commentReply);
-                nestedReply.addReply(cn);
-                setOfReplies.put(commentReply.getId(), cn);
-            }
-        }
-        logger.info("Successfully created nested comment reply");
+    NestedCommentReply createNestedCommentReply(List<CommentReply> commentReplies) {
+        logger.debug("Creating nested comment reply for a list of {} comment replies", commentReplies.size());
+        NestedCommentReply topReply = CommentTreeAssembler.assemble(commentReplies);
+        logger.debug("Successfully created nested comment reply");
         return topReply;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,141 @@
+package com.km.commentservice.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.dto.NestedCommentReply;
+
+/**
+ * Assembles the flat rows of a tree or level query into a nested reply.
+ * <p>
+ * The queries return rows ordered by path, which is a depth first order: every row is either a top level row or a child
+ * of the previous row or of one of its ancestors. A single pass with a stack of the current ancestor chain therefore
+ * finds every parent without a lookup table. Rows that are not in depth first order (parents still have to come before
+ * their children) switch the remaining pass over to an id index. Siblings keep the order of the rows in both cases.
+ * Fixed width paths always sort depth first, the fallback is only reached while a thread still mixes in legacy paths.
+ *
+ * @author karanm
+ */
+final class CommentTreeAssembler {
+    private static final int INITIAL_STACK_SIZE = 16;
+
+    private CommentTreeAssembler() {}
+
+    /**
+     * @param commentReplies the rows, parents before children
+     * @return a reply without a comment holding the top level rows, with all other rows nested below their parent
+     */
+    static NestedCommentReply assemble(List<CommentReply> commentReplies) {
+        NestedCommentReply topReply = new NestedCommentReply();
+        int size = commentReplies.size();
+        if (size == 0) {
+            return topReply;
+        }
+
+        // The first row is always a top level row, all top level rows share its parent
+        int topParentId = commentReplies.get(0).getParentId();
+
+        NestedCommentReply[] nodes = new NestedCommentReply[size];
+        int[] stackIds = new int[INITIAL_STACK_SIZE];
+        NestedCommentReply[] stackNodes = new NestedCommentReply[INITIAL_STACK_SIZE];
+        int depth = 0;
+        IdIndex index = null;
+
+        for (int i = 0; i < size; i++) {
+            CommentReply commentReply = commentReplies.get(i);
+            int id = commentReply.getId();
+            int parentId = commentReply.getParentId();
+
+            NestedCommentReply node = new NestedCommentReply();
+            node.setCommentReply(commentReply);
+            nodes[i] = node;
+
+            NestedCommentReply parent;
+            if (index == null) {
+                while (depth > 0 && stackIds[depth - 1] != parentId) {
+                    depth--;
+                }
+                if (depth > 0) {
+                    parent = stackNodes[depth - 1];
+                } else if (parentId == topParentId) {
+                    parent = topReply;
+                } else {
+                    // Out of depth first order, the parent was already popped
+                    index = new IdIndex(size);
+                    for (int j = 0; j < i; j++) {
+                        index.put(nodes[j].getCommentReply().getId(), j);
+                    }
+                    parent = parentOf(parentId, index, nodes, topReply);
+                }
+                if (index == null) {
+                    if (depth == stackIds.length) {
+                        stackIds = Arrays.copyOf(stackIds, depth * 2);
+                        stackNodes = Arrays.copyOf(stackNodes, depth * 2);
+                    }
+                    stackIds[depth] = id;
+                    stackNodes[depth] = node;
+                    depth++;
+                }
+            } else {
+                parent = parentOf(parentId, index, nodes, topReply);
+            }
+
+            if (index != null) {
+                index.put(id, i);
+            }
+            parent.addReply(node);
+        }
+        return topReply;
+    }
+
+    private static NestedCommentReply parentOf(int parentId, IdIndex index, NestedCommentReply[] nodes,
+                                               NestedCommentReply topReply) {
+        int position = index.get(parentId);
+        return position < 0 ? topReply : nodes[position];
+    }
+
+    /**
+     * Open addressing map from comment id to row position, avoiding boxed keys and entry objects.
+     */
+    private static final class IdIndex {
+        private final int[] keys;
+        private final int[] values;
+        private final boolean[] used;
+        private final int mask;
+
+        IdIndex(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        void put(int key, int value) {
+            int slot = mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        int get(int key) {
+            int slot = mix(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
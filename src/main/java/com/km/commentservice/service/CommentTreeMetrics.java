@@ -0,0 +1,101 @@
+package com.km.commentservice.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.km.commentservice.dto.CommentReply;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records the size and shape of the trees and levels the read endpoints return. Meters are tagged with the query only,
+ * never with comment ids, to keep the number of time series fixed.
+ * <p>
+ * The depth of a tree is the number of levels it spans, its width the largest number of comments on one level. Rows
+ * read without their level are left out of both.
+ * <p>
+ * Meters are looked up in maps of their own rather than registered on every call, as they are recorded on every read.
+ *
+ * @author karanm
+ */
+@Component
+public class CommentTreeMetrics {
+    public static final String FULL_TREE_QUERY = "fulltree";
+    public static final String FULL_TREE_STREAM_QUERY = "fulltree-stream";
+    public static final String NEXT_LEVEL_QUERY = "nextlevel";
+
+    private static final String ROWS = "commentservice.tree.rows";
+    private static final String DEPTH = "commentservice.tree.depth";
+    private static final String WIDTH = "commentservice.tree.width";
+    private static final String SNAPSHOT = "commentservice.tree.snapshot";
+
+    private static final String KEY_DELIMITER = ":";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> snapshotReads = new ConcurrentHashMap<>();
+
+    /**
+     * @param query the query that read the rows
+     * @param rows the number of rows the query returned
+     */
+    public void recordRows(String query, int rows) {
+        summary(ROWS, "Rows returned per tree query", query).record(rows);
+    }
+
+    /**
+     * Records the rows of a tree query along with the depth and width of the tree they make up.
+     *
+     * @param query the query that read the rows
+     * @param commentReplies the rows
+     */
+    public void recordTree(String query, List<CommentReply> commentReplies) {
+        recordRows(query, commentReplies.size());
+
+        int minLevel = Integer.MAX_VALUE;
+        int maxLevel = Integer.MIN_VALUE;
+        for (CommentReply commentReply : commentReplies) {
+            if (commentReply.getLevel() != null) {
+                minLevel = Math.min(minLevel, commentReply.getLevel());
+                maxLevel = Math.max(maxLevel, commentReply.getLevel());
+            }
+        }
+        if (minLevel > maxLevel) {
+            return;
+        }
+        int[] levelSizes = new int[maxLevel - minLevel + 1];
+        int width = 0;
+        for (CommentReply commentReply : commentReplies) {
+            if (commentReply.getLevel() != null) {
+                width = Math.max(width, ++levelSizes[commentReply.getLevel() - minLevel]);
+            }
+        }
+        summary(DEPTH, "Levels spanned by a returned tree", query).record(levelSizes.length);
+        summary(WIDTH, "Most comments on one level of a returned tree", query).record(width);
+    }
+
+    /**
+     * @param result how a tree read was served from the snapshots, see CommentTreeSnapshotStore
+     */
+    public void recordSnapshotRead(String result) {
+        snapshotReads.computeIfAbsent(result, key -> Counter.builder(SNAPSHOT)
+                        .description("Tree reads by how the thread snapshots served them")
+                        .tag("result", result)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    private DistributionSummary summary(String name, String description, String query) {
+        return summaries.computeIfAbsent(name + KEY_DELIMITER + query, key -> DistributionSummary.builder(name)
+                .description(description)
+                .tag("query", query)
+                .register(meterRegistry));
+    }
+}
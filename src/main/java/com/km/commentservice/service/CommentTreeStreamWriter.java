@@ -0,0 +1,85 @@
+package com.km.commentservice.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.km.commentservice.dto.CommentReply;
+
+/**
+ * Writes the path ordered rows of a tree query as the JSON of the nested reply built by CommentTreeAssembler, while
+ * the rows are read. Only the ids of the current ancestor chain are kept, so memory does not grow with the tree.
+ * <p>
+ * As in CommentTreeAssembler a row is a child of the previous row or of one of its ancestors. A row whose parent is
+ * no longer open cannot be nested after the fact and is written as a top level row.
+ *
+ * @author karanm
+ */
+final class CommentTreeStreamWriter {
+    private static final int INITIAL_STACK_SIZE = 16;
+
+    private CommentTreeStreamWriter() {}
+
+    /**
+     * @param rows the rows in path order
+     * @param generator the generator to write to, its codec serializes the comments
+     * @param maxDepth the maxDepth field of the reply, or null to leave it out
+     */
+    static void write(Iterator<CommentReply> rows, JsonGenerator generator, Integer maxDepth) throws IOException {
+        generator.writeStartObject();
+
+        int[] stackIds = new int[INITIAL_STACK_SIZE];
+        // Whether the comments array of an open node was started, it is only written for nodes with children
+        boolean[] stackOpen = new boolean[INITIAL_STACK_SIZE];
+        int depth = 0;
+        boolean topOpen = false;
+
+        while (rows.hasNext()) {
+            CommentReply commentReply = rows.next();
+            int parentId = commentReply.getParentId();
+
+            while (depth > 0 && stackIds[depth - 1] != parentId) {
+                closeNode(generator, stackOpen[--depth]);
+            }
+            if (depth > 0) {
+                if (!stackOpen[depth - 1]) {
+                    generator.writeArrayFieldStart("comments");
+                    stackOpen[depth - 1] = true;
+                }
+            } else if (!topOpen) {
+                generator.writeArrayFieldStart("comments");
+                topOpen = true;
+            }
+
+            generator.writeStartObject();
+            generator.writeObjectField("comment", commentReply);
+            if (depth == stackIds.length) {
+                stackIds = Arrays.copyOf(stackIds, depth * 2);
+                stackOpen = Arrays.copyOf(stackOpen, depth * 2);
+            }
+            stackIds[depth] = commentReply.getId();
+            stackOpen[depth] = false;
+            depth++;
+        }
+
+        while (depth > 0) {
+            closeNode(generator, stackOpen[--depth]);
+        }
+        if (topOpen) {
+            generator.writeEndArray();
+        }
+        if (maxDepth != null) {
+            generator.writeNumberField("maxDepth", maxDepth);
+        }
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    private static void closeNode(JsonGenerator generator, boolean open) throws IOException {
+        if (open) {
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+}
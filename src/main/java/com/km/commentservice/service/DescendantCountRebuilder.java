@@ -0,0 +1,26 @@
+package com.km.commentservice.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the stored descendant counts of all comments once the application has started.
+ * Enabled with {@code commentservice.descendant-count.rebuild-on-startup=true}, e.g. after the column was added
+ * to an existing database.
+ *
+ * @author karanm
+ */
+@Component
+@ConditionalOnProperty(name = "commentservice.descendant-count.rebuild-on-startup", havingValue = "true")
+public class DescendantCountRebuilder implements ApplicationRunner {
+    @Autowired
+    private CommentService commentService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        commentService.rebuildDescendantCounts();
+    }
+}
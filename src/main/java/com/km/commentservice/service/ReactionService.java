@@ -1,31 +1,47 @@
 package com.km.commentservice.service;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.counter.ReactionCounter;
 import com.km.commentservice.dao.CommentDAO;
-import com.km.commentservice.dao.ReactionCountDAO;
 import com.km.commentservice.dao.ReactionDAO;
+import com.km.commentservice.dto.ReactionBatchItemReply;
+import com.km.commentservice.dto.ReactionBatchReply;
 import com.km.commentservice.dto.ReactionReply;
 import com.km.commentservice.dto.ReactionRequest;
+import com.km.commentservice.exception.BadRequestException;
 import com.km.commentservice.exception.OperationNotAllowedException;
 import com.km.commentservice.exception.ResourceNotFoundException;
-import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
 import com.km.commentservice.model.Reaction;
-import com.km.commentservice.model.ReactionCount;
 import com.km.commentservice.model.ReactionCountId;
 import com.km.commentservice.model.ReactionId;
 import com.km.commentservice.model.ReactionType;
-import jakarta.transaction.Transactional;
+import com.km.commentservice.snapshot.CommentTreeSnapshotStore;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import static com.km.commentservice.Constants.COMMENT_NOT_FOUND;
+import static com.km.commentservice.Constants.REACTION_BATCH_TOO_LARGE;
 import static com.km.commentservice.Constants.REACTION_NOT_FOUND;
+import static com.km.commentservice.Constants.REACTION_SUPERSEDED;
+import static com.km.commentservice.Constants.REACTION_UNCHANGED;
 
 /**
  * Service class for managing reactions in a comment system.
@@ -35,6 +51,7 @@ import static com.km.commentservice.Constants.REACTION_NOT_FOUND;
  * @author karanm
  */
 @Service
+@Timed("commentservice.service")
 public class ReactionService {
     Logger logger = LoggerFactory.getLogger(ReactionService.class);
 
@@ -45,7 +62,16 @@ public class ReactionService {
     private CommentDAO commentDAO;
 
     @Autowired
-    private ReactionCountDAO reactionCountDAO;
+    private ReactionCounter reactionCounter;
+
+    @Autowired
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
+    @Value("${commentservice.reaction-batch.max-size:5000}")
+    private int maxBatchSize = 5000;
 
     /**
      * Retrieves a list of users who have reacted to a specific comment with a specific reaction type.
@@ -57,12 +83,13 @@ public class ReactionService {
      * @return a list of usernames
      * @throws ResourceNotFoundException if the comment does not exist or is deleted
      */
+    @Transactional(readOnly = true)
     public ReactionReply getUsersForReaction(Integer commentId, ReactionType reactionType, Integer pageNo, Integer pageSize) {
-        logger.info("Fetching users for reaction on comment ID: {} with reaction type: {} on page number: {} with page size: {}",
+        logger.debug("Fetching users for reaction on comment ID: {} with reaction type: {} on page number: {} with page size: {}",
                 commentId, reactionType, pageNo, pageSize);
-        Optional<Comment> commentOptional = commentDAO.findById(commentId);
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(commentId);
 
-        if (commentOptional.isEmpty() || commentOptional.get().getIsDeleted()) {
+        if (commentOptional.isEmpty() || commentOptional.get().isDeleted()) {
             logger.error("Comment with ID: {} not found or is deleted", commentId);
             throw new ResourceNotFoundException(COMMENT_NOT_FOUND);
         }
@@ -71,7 +98,7 @@ public class ReactionService {
         List<Reaction> reactions = reactionDAO.findByIdCommentIdAndReactionTypeOrderByUpdatedAtDesc(commentId, reactionType, pageable);
         List<String> users = reactions.stream().map(Reaction::getId).map(ReactionId::getUser).toList();
 
-        logger.info("Successfully fetched users for reaction on comment ID: {} with reaction type: {} on page number: " +
+        logger.debug("Successfully fetched users for reaction on comment ID: {} with reaction type: {} on page number: " +
                 "{} with page size: {}", commentId, reactionType, pageNo, pageSize);
         return ReactionReply.builder().users(users).pageNo(pageNo).pageSize(pageSize).size(users.size()).build();
     }
@@ -90,11 +117,11 @@ public class ReactionService {
         ReactionType reactionType = reactionRequest.getReactionType();
         String user = reactionRequest.getUser();
 
-        logger.info("Posting reaction to comment ID: {} with reaction type: {} by user: {}", commentId, reactionType, user);
+        logger.debug("Posting reaction to comment ID: {} with reaction type: {} by user: {}", commentId, reactionType, user);
 
-        Optional<Comment> commentOptional = commentDAO.findById(commentId);
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(commentId);
 
-        if (commentOptional.isEmpty() || commentOptional.get().getIsDeleted()) {
+        if (commentOptional.isEmpty() || commentOptional.get().isDeleted()) {
             logger.error("Comment with ID: {} not found or is deleted", commentId);
             throw new ResourceNotFoundException(COMMENT_NOT_FOUND);
         }
@@ -116,13 +143,119 @@ public class ReactionService {
         } else {
             insertReactionCount(newReaction);
             Reaction reply =  reactionDAO.save(newReaction);
-            logger.info("Successfully posted reaction to comment ID: {} with reaction type: {} by user: {}",
+            // Patch the snapshot before the cached trees are evicted, both run after commit in this order
+            updateTreeSnapshot(commentOptional.get(), Map.of(createReactionCountId(commentId, reactionType), 1L));
+            cacheInvalidator.evictCommentTree(commentOptional.get().path());
+            cacheInvalidator.evictReactionUsers(commentId, reactionType);
+            logger.debug("Successfully posted reaction to comment ID: {} with reaction type: {} by user: {}",
                     commentId, reactionType, user);
             return ReactionReply.builder().commentId(reply.getId().getCommentId()).user(reply.getId().getUser())
                     .reactionType(reply.getReactionType()).created(reply.getCreatedAt()).build();
         }
     }
 
+    /**
+     * Sets a batch of reactions in one transaction. A reaction is added when the user has not reacted to the comment yet
+     * and replaces the previous reaction of the user otherwise. When the batch holds several reactions of a user to the
+     * same comment, the last one is applied.
+     * <p>
+     * The comments are read with one IN query and the previous reactions with another, new reactions are inserted as a
+     * JDBC batch and the counts get one net change per comment and reaction type. Reactions to missing or deleted
+     * comments and reactions that equal the previous one are reported as failed, the others are still applied.
+     *
+     * @param reactionRequests the reactions to set
+     * @return one result per reaction, in the order of the request
+     * @throws BadRequestException if the batch is larger than the maximum batch size
+     */
+    @Transactional
+    public ReactionBatchReply postReactions(List<ReactionRequest> reactionRequests) {
+        logger.debug("Posting a batch of {} reactions", reactionRequests.size());
+        if (reactionRequests.size() > maxBatchSize) {
+            logger.error("Batch of {} reactions is larger than the maximum of {}", reactionRequests.size(), maxBatchSize);
+            throw new BadRequestException(REACTION_BATCH_TOO_LARGE);
+        }
+
+        Map<ReactionId, Integer> lastIndexes = new HashMap<>();
+        Set<Integer> commentIds = new HashSet<>();
+        Set<String> users = new HashSet<>();
+        for (int index = 0; index < reactionRequests.size(); index++) {
+            ReactionRequest request = reactionRequests.get(index);
+            lastIndexes.put(createReactionId(request.getCommentId(), request.getUser()), index);
+            commentIds.add(request.getCommentId());
+            users.add(request.getUser());
+        }
+
+        Map<Integer, CommentHeader> comments = new HashMap<>();
+        if (!commentIds.isEmpty()) {
+            commentDAO.findHeadersByIdIn(commentIds).forEach(comment -> comments.put(comment.id(), comment));
+        }
+        // Matches every user with every comment of the batch, the reactions that were not asked for are skipped below
+        Map<ReactionId, Reaction> previousReactions = new HashMap<>();
+        reactionDAO.findByIdCommentIdInAndIdUserIn(commentIds, users)
+                .forEach(reaction -> previousReactions.put(reaction.getId(), reaction));
+
+        List<Reaction> newReactions = new ArrayList<>();
+        Map<ReactionCountId, Long> deltas = new HashMap<>();
+        Map<Integer, Set<ReactionType>> changedTypes = new LinkedHashMap<>();
+        List<ReactionBatchItemReply> results = new ArrayList<>(reactionRequests.size());
+        int applied = 0;
+        for (int index = 0; index < reactionRequests.size(); index++) {
+            ReactionRequest request = reactionRequests.get(index);
+            Integer commentId = request.getCommentId();
+            ReactionType reactionType = request.getReactionType();
+            ReactionId reactionId = createReactionId(commentId, request.getUser());
+            CommentHeader comment = comments.get(commentId);
+            Reaction previousReaction = previousReactions.get(reactionId);
+
+            String error = null;
+            if (lastIndexes.get(reactionId) != index) {
+                error = REACTION_SUPERSEDED;
+            } else if (comment == null || comment.isDeleted()) {
+                error = COMMENT_NOT_FOUND;
+            } else if (previousReaction != null && previousReaction.getReactionType() == reactionType) {
+                error = REACTION_UNCHANGED;
+            } else if (previousReaction != null) {
+                // The reaction is managed, the changed type is written when the transaction flushes
+                ReactionType previousType = previousReaction.getReactionType();
+                previousReaction.setReactionType(reactionType);
+                deltas.merge(createReactionCountId(commentId, previousType), -1L, Long::sum);
+                changedTypes.computeIfAbsent(commentId, key -> EnumSet.noneOf(ReactionType.class)).add(previousType);
+            } else {
+                Reaction newReaction = new Reaction();
+                newReaction.setId(reactionId);
+                newReaction.setReactionType(reactionType);
+                newReactions.add(newReaction);
+            }
+
+            if (error != null) {
+                logger.error("Reaction {} of the batch to comment ID: {} by user: {} not applied: {}",
+                        index, commentId, request.getUser(), error);
+            } else {
+                deltas.merge(createReactionCountId(commentId, reactionType), 1L, Long::sum);
+                changedTypes.computeIfAbsent(commentId, key -> EnumSet.noneOf(ReactionType.class)).add(reactionType);
+                applied++;
+            }
+            results.add(ReactionBatchItemReply.builder().index(index).commentId(commentId).user(request.getUser())
+                    .reactionType(reactionType).error(error).build());
+        }
+
+        reactionDAO.persistAll(newReactions);
+        deltas.values().removeIf(delta -> delta == 0);
+        if (!deltas.isEmpty()) {
+            reactionCounter.add(deltas);
+            if (reactionCounter.writesInTransaction()) {
+                commentTreeSnapshotStore.reactionCountsChanged(deltas, commentId -> comments.get(commentId).path());
+            }
+        }
+        if (!changedTypes.isEmpty()) {
+            cacheInvalidator.evictCommentTrees(changedTypes.keySet().stream().map(commentId -> comments.get(commentId).path()).toList());
+            changedTypes.forEach((commentId, types) -> cacheInvalidator.evictReactionUsers(commentId, types.toArray(ReactionType[]::new)));
+        }
+        logger.debug("Successfully applied {} of a batch of {} reactions", applied, reactionRequests.size());
+        return ReactionBatchReply.builder().size(reactionRequests.size()).applied(applied)
+                .failed(reactionRequests.size() - applied).results(results).build();
+    }
+
     /**
      * Allows a user to update their reaction on a comment.
      *
@@ -138,11 +271,11 @@ public class ReactionService {
         ReactionType reactionType = reactionRequest.getReactionType();
         String user = reactionRequest.getUser();
 
-        logger.info("Updating reaction to comment ID: {} with reaction type: {} by user: {}", commentId, reactionType, user);
+        logger.debug("Updating reaction to comment ID: {} with reaction type: {} by user: {}", commentId, reactionType, user);
 
-        Optional<Comment> commentOptional = commentDAO.findById(commentId);
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(commentId);
 
-        if (commentOptional.isEmpty() || commentOptional.get().getIsDeleted()) {
+        if (commentOptional.isEmpty() || commentOptional.get().isDeleted()) {
             logger.error("Comment with ID: {} not found or is deleted", commentId);
             throw new ResourceNotFoundException(COMMENT_NOT_FOUND);
         }
@@ -164,7 +297,11 @@ public class ReactionService {
             } else {
                 updateReactionCount(newReaction, previousReaction.get());
                 Reaction reply = reactionDAO.save(newReaction);
-                logger.info("Successfully updated reaction to comment ID: {} with reaction type: {} by user: {}",
+                updateTreeSnapshot(commentOptional.get(), Map.of(createReactionCountId(commentId, reactionType), 1L,
+                        createReactionCountId(commentId, previousReaction.get().getReactionType()), -1L));
+                cacheInvalidator.evictCommentTree(commentOptional.get().path());
+                cacheInvalidator.evictReactionUsers(commentId, reactionType, previousReaction.get().getReactionType());
+                logger.debug("Successfully updated reaction to comment ID: {} with reaction type: {} by user: {}",
                         commentId, reactionType, user);
                 return ReactionReply.builder().commentId(reply.getId().getCommentId()).user(reply.getId().getUser())
                         .reactionType(reply.getReactionType()).updated(reply.getUpdatedAt()).build();
@@ -185,14 +322,14 @@ public class ReactionService {
      */
     @Transactional
     public Integer deleteReactionFromComment(Integer commentId, String user) {
-        logger.info("Deleting reaction from comment ID: {} by user: {}", commentId, user);
+        logger.debug("Deleting reaction from comment ID: {} by user: {}", commentId, user);
 
         ReactionId reactionId = new ReactionId();
         reactionId.setCommentId(commentId);
         reactionId.setUser(user);
 
-        Optional<Comment> commentOptional = commentDAO.findById(commentId);
-        if(commentOptional.isEmpty() || commentOptional.get().getIsDeleted()) {
+        Optional<CommentHeader> commentOptional = commentDAO.findHeaderById(commentId);
+        if(commentOptional.isEmpty() || commentOptional.get().isDeleted()) {
             logger.error("Comment with ID: {} not found or is deleted", commentId);
             throw new ResourceNotFoundException(COMMENT_NOT_FOUND);
         }
@@ -205,10 +342,40 @@ public class ReactionService {
 
         Integer reactionReply = reactionDAO.deleteById(reactionId);
         deleteReactionCount(reaction.get());
-        logger.info("Successfully deleted reaction from comment ID: {} by user: {}", commentId, user);
+        updateTreeSnapshot(commentOptional.get(), Map.of(createReactionCountId(commentId, reaction.get().getReactionType()), -1L));
+        cacheInvalidator.evictCommentTree(commentOptional.get().path());
+        cacheInvalidator.evictReactionUsers(commentId, reaction.get().getReactionType());
+        logger.debug("Successfully deleted reaction from comment ID: {} by user: {}", commentId, user);
         return reactionReply;
     }
 
+    private static ReactionId createReactionId(Integer commentId, String user) {
+        ReactionId reactionId = new ReactionId();
+        reactionId.setCommentId(commentId);
+        reactionId.setUser(user);
+        return reactionId;
+    }
+
+    private static ReactionCountId createReactionCountId(Integer commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(commentId);
+        reactionCountId.setReactionType(reactionType);
+        return reactionCountId;
+    }
+
+    /**
+     * Adds the count changes of reactions to one comment to the snapshot of its thread, when the counts were written in
+     * this transaction. Write behind counts reach the snapshot when they are flushed.
+     *
+     * @param comment the comment
+     * @param deltas the changes to its counts
+     */
+    private void updateTreeSnapshot(CommentHeader comment, Map<ReactionCountId, Long> deltas) {
+        if (reactionCounter.writesInTransaction()) {
+            commentTreeSnapshotStore.reactionCountsChanged(deltas, commentId -> comment.path());
+        }
+    }
+
     /**
      * Updates the count of reactions.
      *
@@ -217,7 +384,7 @@ public class ReactionService {
      */
     private void updateReactionCount(Reaction newReaction, Reaction previousReaction) {
         insertReactionCount(newReaction);
-        reactionCountDAO.decrementReactionCount(previousReaction.getId().getCommentId(), previousReaction.getReactionType());
+        reactionCounter.decrement(previousReaction.getId().getCommentId(), previousReaction.getReactionType());
     }
 
     /**
@@ -226,26 +393,15 @@ public class ReactionService {
      * @param reaction the reaction to be deleted
      */
     private void deleteReactionCount(Reaction reaction) {
-        reactionCountDAO.decrementReactionCount(reaction.getId().getCommentId(), reaction.getReactionType());
+        reactionCounter.decrement(reaction.getId().getCommentId(), reaction.getReactionType());
     }
 
     /**
-     * Inserts a new reaction count.
+     * Increments the count of reactions.
      *
      * @param reaction the reaction to be inserted
      */
     private void insertReactionCount(Reaction reaction) {
-        ReactionCountId reactionCountId = new ReactionCountId();
-        reactionCountId.setCommentId(reaction.getId().getCommentId());
-        reactionCountId.setReactionType(reaction.getReactionType());
-        Optional<ReactionCount> reactionCountOptional = reactionCountDAO.findById(reactionCountId);
-        if(reactionCountOptional.isPresent()) {
-            reactionCountDAO.incrementReactionCount(reaction.getId().getCommentId(), reaction.getReactionType());
-        } else {
-            ReactionCount reactionCount = new ReactionCount();
-            reactionCount.setId(reactionCountId);
-            reactionCount.setCount(1);
-            reactionCountDAO.save(reactionCount);
-        }
+        reactionCounter.increment(reaction.getId().getCommentId(), reaction.getReactionType());
     }
 }
@@ -0,0 +1,504 @@
+package com.km.commentservice.snapshot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.model.CommentPath;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+import com.km.commentservice.service.CommentTreeMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps a snapshot of every recently read thread (a top level comment and all replies below it) in Redis, so tree
+ * reads below a top level comment are answered from the snapshot instead of the tree query with its reaction count
+ * join. The replies of a thread are members of a sorted set, each its path and the comment, all with the same score so
+ * they sort by path and the replies below a comment are one lexicographic range. A read fetches only that range and the
+ * counts of the comments in it, not the whole thread. Non zero reaction counts are fields of a hash next to the set, the
+ * reply counts follow from the paths. A state key marks a complete snapshot, or a thread too large to snapshot.
+ * <p>
+ * A snapshot is built from the tree query on the first read of the thread and from then on patched by the writes:
+ * comment posts, edits and deletes set the member of the comment, reaction count changes increment the count fields when
+ * they reach the reaction_count table. Reads then apply the pending reaction count changes of the node as before.
+ * <p>
+ * Patches run after commit and only change a snapshot that exists. A build reads the thread and installs the snapshot
+ * only if no write to the thread was patched in the meantime, tracked by a version key per thread, so a build cannot
+ * install a thread missing a write whose patch it raced. With reads going to replicas a build is also not installed
+ * within {@code commentservice.datasource.replica.max-lag} after a write, as it may have read a replica without it.
+ * Snapshots expire after {@code commentservice.tree-snapshot.ttl} without a build, which bounds the damage of a patch
+ * that got lost.
+ * <p>
+ * Threads with more than {@code commentservice.tree-snapshot.max-size} replies are not snapshotted, their reads keep
+ * using the tree query. The limit is checked on build and again by every patch that adds a reply, a snapshot that would
+ * grow past it is dropped and the thread marked oversized. Threads whose paths still use the legacy encoding are not
+ * snapshotted either.
+ *
+ * @author karanm
+ */
+@Component
+public class CommentTreeSnapshotStore {
+    Logger logger = LoggerFactory.getLogger(CommentTreeSnapshotStore.class);
+
+    public static final String HIT = "hit";
+    public static final String BUILT = "built";
+    public static final String OVERSIZED = "oversized";
+    public static final String UNAVAILABLE = "unavailable";
+
+    private static final String KEY_PREFIX = "commentservice:tree-snapshot:";
+
+    // Values of the state key
+    private static final String COMPLETE_STATE = "complete";
+    private static final String OVERSIZED_STATE = "oversized";
+
+    // Members are the path, a space and the comment, the space sorts before the separator of the paths below it
+    private static final char MEMBER_DELIMITER = ' ';
+
+    private static final String SET = "set";
+    private static final String INCREMENT = "incr";
+
+    // The types the tree query counts, a row carries one count per type in this order
+    private static final ReactionType[] COUNT_TYPES = ReactionType.values();
+
+    // KEYS: rows, counts, state. ARGV: first and last member of the range, then the reaction types to count.
+    // Returns nothing without a snapshot, else the state followed by each member and its counts
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(
+            "local state = redis.call('get', KEYS[3]) " +
+            "if not state then return {} end " +
+            "if state ~= '" + COMPLETE_STATE + "' then return {state} end " +
+            "local result = {state} " +
+            "for _, member in ipairs(redis.call('zrangebylex', KEYS[1], ARGV[1], ARGV[2])) do " +
+            "result[#result + 1] = member " +
+            "local path = string.sub(member, 1, string.find(member, '" + MEMBER_DELIMITER + "', 1, true) - 1) " +
+            "for i = 3, #ARGV do result[#result + 1] = redis.call('hget', KEYS[2], path .. '" + MEMBER_DELIMITER + "' .. ARGV[i]) or '0' end " +
+            "end " +
+            "return result", List.class);
+
+    // KEYS: rows, counts, state, version, recent write. ARGV: version read before the build, ttl, number of members,
+    // the members, then count field and value pairs
+    private static final RedisScript<Long> INSTALL_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[4]) or '') ~= ARGV[1] or redis.call('exists', KEYS[5]) == 1 then return 0 end " +
+            "redis.call('del', KEYS[1], KEYS[2]) " +
+            "local members = tonumber(ARGV[3]) " +
+            "for i = 4, 3 + members do redis.call('zadd', KEYS[1], 0, ARGV[i]) end " +
+            "for i = 4 + members, #ARGV, 2 do redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+            "redis.call('pexpire', KEYS[2], ARGV[2]) " +
+            "redis.call('set', KEYS[3], '" + COMPLETE_STATE + "', 'PX', ARGV[2]) " +
+            "return 1", Long.class);
+
+    // KEYS: rows, counts, state, version, recent write. ARGV: ttl, replica lag, max size, then operation, path or
+    // field and value triples. A set replaces the members of the path, adding one to a full snapshot drops it
+    private static final RedisScript<Long> PATCH_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('incr', KEYS[4]) " +
+            "redis.call('pexpire', KEYS[4], ARGV[1]) " +
+            "if tonumber(ARGV[2]) > 0 then redis.call('set', KEYS[5], '1', 'PX', ARGV[2]) end " +
+            "if redis.call('get', KEYS[3]) ~= '" + COMPLETE_STATE + "' then return 0 end " +
+            "for i = 4, #ARGV, 3 do " +
+            "if ARGV[i] == '" + SET + "' then " +
+            "local path = ARGV[i + 1] " +
+            "local existing = redis.call('zrangebylex', KEYS[1], '[' .. path .. '" + MEMBER_DELIMITER + "', '(' .. path .. '!') " +
+            "if #existing > 0 then redis.call('zrem', KEYS[1], unpack(existing)) " +
+            "elseif redis.call('zcard', KEYS[1]) >= tonumber(ARGV[3]) then " +
+            "redis.call('del', KEYS[1], KEYS[2]) " +
+            "redis.call('set', KEYS[3], '" + OVERSIZED_STATE + "', 'PX', ARGV[1]) " +
+            "return 0 end " +
+            "redis.call('zadd', KEYS[1], 0, path .. '" + MEMBER_DELIMITER + "' .. ARGV[i + 2]) " +
+            "else redis.call('hincrby', KEYS[2], ARGV[i + 1], ARGV[i + 2]) end " +
+            "end " +
+            "local ttl = redis.call('pttl', KEYS[3]) " +
+            "if ttl > 0 then redis.call('pexpire', KEYS[1], ttl) redis.call('pexpire', KEYS[2], ttl) end " +
+            "return 1", Long.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Autowired
+    private CommentDAO commentDAO;
+
+    @Autowired
+    private CommentTreeMetrics commentTreeMetrics;
+
+    @Value("${commentservice.tree-snapshot.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${commentservice.tree-snapshot.max-size:10000}")
+    private int maxSize = 10000;
+
+    @Value("${commentservice.tree-snapshot.ttl:3600000}")
+    private long ttl = 3600000;
+
+    @Value("${commentservice.datasource.replica.enabled:false}")
+    private boolean replicaReads = false;
+
+    @Value("${commentservice.datasource.replica.max-lag:2000}")
+    private long replicaMaxLag = 2000;
+
+    /**
+     * Returns the tree below a comment from the snapshot of its thread, building the snapshot when there is none.
+     *
+     * @param parent the comment the tree hangs off, not the top level (id 0)
+     * @param maxLevel the deepest level of the tree
+     * @return the rows of the tree in path order, the same as the tree query returns, or empty when the thread is not
+     * served from a snapshot
+     */
+    public Optional<List<CommentReply>> getTree(CommentHeader parent, int maxLevel) {
+        if (!enabled || CommentPath.isLegacy(parent.path())) {
+            return Optional.empty();
+        }
+        StringRedisTemplate redisTemplate = redisTemplateProvider.getIfAvailable();
+        if (redisTemplate == null) {
+            return Optional.empty();
+        }
+
+        int rootId = rootId(parent.id(), parent.path());
+        List<ThreadRow> rows;
+        try {
+            List<?> result = redisTemplate.execute(READ_SCRIPT, keys(rootId), readArgs(parent.path()));
+            if (result == null || result.isEmpty()) {
+                rows = build(redisTemplate, rootId);
+                if (rows == null) {
+                    commentTreeMetrics.recordSnapshotRead(OVERSIZED);
+                    return Optional.empty();
+                }
+                commentTreeMetrics.recordSnapshotRead(BUILT);
+            } else if (OVERSIZED_STATE.equals(result.get(0))) {
+                commentTreeMetrics.recordSnapshotRead(OVERSIZED);
+                return Optional.empty();
+            } else {
+                rows = decode(result);
+                commentTreeMetrics.recordSnapshotRead(HIT);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read snapshot of thread: {}, reading the tree from the database: {}", rootId,
+                    e.getMessage());
+            commentTreeMetrics.recordSnapshotRead(UNAVAILABLE);
+            return Optional.empty();
+        }
+
+        // The reply count of a comment is the number of comments below it, all of which are in the subtree read
+        String subtreePrefix = parent.path() + CommentPath.SEPARATOR;
+        Map<Integer, Long> descendantCounts = new HashMap<>();
+        for (ThreadRow row : rows) {
+            if (row.path().startsWith(subtreePrefix)) {
+                for (Integer ancestorId : CommentPath.ancestorIds(row.path())) {
+                    descendantCounts.merge(ancestorId, 1L, Long::sum);
+                }
+            }
+        }
+        List<CommentReply> tree = new ArrayList<>();
+        for (ThreadRow row : rows) {
+            if (row.path().startsWith(subtreePrefix) && row.comment().level() <= maxLevel) {
+                tree.add(row.comment().reply(descendantCounts.getOrDefault(row.comment().id(), 0L), row.counts()));
+            }
+        }
+        return Optional.of(tree);
+    }
+
+    /**
+     * Sets the given replies in the snapshots of their threads after the transaction commits. New replies are added,
+     * edited and deleted replies replaced. Top level comments are not part of a snapshot and are skipped.
+     *
+     * @param comments the posted, edited or deleted comments
+     */
+    public void commentsChanged(Collection<Comment> comments) {
+        if (!enabled || comments.isEmpty()) {
+            return;
+        }
+        List<Comment> changed = List.copyOf(comments);
+        afterCommit(() -> {
+            // Read after commit, when the timestamps set on flush are on the entities
+            Map<Integer, List<String>> patches = new LinkedHashMap<>();
+            for (Comment comment : changed) {
+                if (CommentPath.isLegacy(comment.getPath()) || CommentPath.ancestorIds(comment.getPath()).isEmpty()) {
+                    continue;
+                }
+                List<String> patch = patches.computeIfAbsent(rootId(comment.getId(), comment.getPath()), key -> new ArrayList<>());
+                patch.add(SET);
+                patch.add(comment.getPath());
+                patch.add(encode(SnapshotRow.of(comment)));
+            }
+            patches.forEach(this::patch);
+        });
+    }
+
+    /**
+     * Adds reaction count changes to the snapshots of the threads of the comments after the transaction commits.
+     * Call it when the changes reach the reaction_count table, so snapshots built from the table and patched
+     * snapshots agree.
+     *
+     * @param deltas the changes to the counts, by comment and reaction type
+     * @param pathOf the path of each comment in the deltas
+     */
+    public void reactionCountsChanged(Map<ReactionCountId, Long> deltas, Function<Integer, String> pathOf) {
+        if (!enabled || deltas.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<String>> patches = new LinkedHashMap<>();
+        deltas.forEach((reactionCountId, delta) -> {
+            String path = pathOf.apply(reactionCountId.getCommentId());
+            if (delta == 0 || path == null || CommentPath.isLegacy(path) || CommentPath.ancestorIds(path).isEmpty()) {
+                return;
+            }
+            List<String> patch = patches.computeIfAbsent(rootId(reactionCountId.getCommentId(), path), key -> new ArrayList<>());
+            patch.add(INCREMENT);
+            patch.add(countField(path, reactionCountId.getReactionType()));
+            patch.add(Long.toString(delta));
+        });
+        afterCommit(() -> patches.forEach(this::patch));
+    }
+
+    private List<ThreadRow> build(StringRedisTemplate redisTemplate, int rootId) {
+        String version = redisTemplate.opsForValue().get(versionKey(rootId));
+        String rootPath = CommentPath.of(null, rootId);
+        List<CommentReply> replies = commentDAO.getCommentTreeById(rootPath, rootId, Integer.MAX_VALUE, maxSize + 1);
+        if (replies.size() > maxSize) {
+            logger.info("Thread: {} has more than {} replies, reading it from the database", rootId, maxSize);
+            redisTemplate.opsForValue().set(stateKey(rootId), OVERSIZED_STATE, Duration.ofMillis(ttl));
+            return null;
+        }
+
+        // Rows come in path order, so the path of the parent of every row is known before the row
+        Map<Integer, String> paths = new HashMap<>();
+        paths.put(rootId, rootPath);
+        List<ThreadRow> rows = new ArrayList<>(replies.size());
+        List<String> members = new ArrayList<>(replies.size());
+        List<String> counts = new ArrayList<>();
+        for (CommentReply reply : replies) {
+            String parentPath = paths.get(reply.getParentId());
+            if (parentPath == null) {
+                throw new IllegalStateException("Reply: " + reply.getId() + " is out of path order");
+            }
+            String path = CommentPath.of(parentPath, reply.getId());
+            paths.put(reply.getId(), path);
+            long[] rowCounts = new long[COUNT_TYPES.length];
+            for (int i = 0; i < COUNT_TYPES.length; i++) {
+                Long count = count(reply, COUNT_TYPES[i]);
+                rowCounts[i] = count != null ? count : 0L;
+                addCount(counts, path, COUNT_TYPES[i], rowCounts[i]);
+            }
+            SnapshotRow row = SnapshotRow.of(reply);
+            rows.add(new ThreadRow(path, row, rowCounts));
+            members.add(path + MEMBER_DELIMITER + encode(row));
+        }
+
+        List<String> args = new ArrayList<>(members.size() + counts.size() + 3);
+        args.add(version != null ? version : "");
+        args.add(Long.toString(ttl));
+        args.add(Integer.toString(members.size()));
+        args.addAll(members);
+        args.addAll(counts);
+        Long installed = redisTemplate.execute(INSTALL_SCRIPT, writeKeys(rootId), args.toArray());
+        if (installed == null || installed == 0) {
+            logger.debug("Thread: {} was written while its snapshot was built, not installing it", rootId);
+        }
+        return rows;
+    }
+
+    private void patch(int rootId, List<String> operations) {
+        StringRedisTemplate redisTemplate = redisTemplateProvider.getIfAvailable();
+        if (redisTemplate == null) {
+            return;
+        }
+        List<String> args = new ArrayList<>(operations.size() + 3);
+        args.add(Long.toString(ttl));
+        args.add(Long.toString(replicaReads ? replicaMaxLag : 0));
+        args.add(Integer.toString(maxSize));
+        args.addAll(operations);
+        try {
+            redisTemplate.execute(PATCH_SCRIPT, writeKeys(rootId), args.toArray());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to patch snapshot of thread: {}, dropping it: {}", rootId, e.getMessage());
+            try {
+                redisTemplate.delete(stateKey(rootId));
+            } catch (RuntimeException deleteFailure) {
+                // The snapshot expires by itself
+                logger.error("Failed to drop snapshot of thread: {}, it is stale until it expires", rootId, deleteFailure);
+            }
+        }
+    }
+
+    // The members below the parent are the ones from its path and separator up to, not including, its path and the
+    // character after the separator
+    private static Object[] readArgs(String parentPath) {
+        Object[] args = new Object[2 + COUNT_TYPES.length];
+        args[0] = "[" + parentPath + CommentPath.SEPARATOR;
+        args[1] = "(" + parentPath + (char) (CommentPath.SEPARATOR.charAt(0) + 1);
+        for (int i = 0; i < COUNT_TYPES.length; i++) {
+            args[2 + i] = COUNT_TYPES[i].name();
+        }
+        return args;
+    }
+
+    private static List<ThreadRow> decode(List<?> result) {
+        int stride = 1 + COUNT_TYPES.length;
+        List<ThreadRow> rows = new ArrayList<>((result.size() - 1) / stride);
+        for (int i = 1; i + stride <= result.size(); i += stride) {
+            String member = result.get(i).toString();
+            int delimiter = member.indexOf(MEMBER_DELIMITER);
+            long[] counts = new long[COUNT_TYPES.length];
+            for (int type = 0; type < COUNT_TYPES.length; type++) {
+                counts[type] = Long.parseLong(result.get(i + 1 + type).toString());
+            }
+            rows.add(new ThreadRow(member.substring(0, delimiter), decodeRow(member.substring(delimiter + 1)), counts));
+        }
+        return rows;
+    }
+
+    // A new reaction type needs a count on CommentReply, which the switches do not compile without
+    private static Long count(CommentReply reply, ReactionType reactionType) {
+        return switch (reactionType) {
+            case LIKE -> reply.getLikeCount();
+            case DISLIKE -> reply.getDislikeCount();
+        };
+    }
+
+    private static void setCount(CommentReply reply, ReactionType reactionType, long count) {
+        switch (reactionType) {
+            case LIKE -> reply.setLikeCount(count);
+            case DISLIKE -> reply.setDislikeCount(count);
+        }
+    }
+
+    private void afterCommit(Runnable patch) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    patch.run();
+                }
+            });
+        } else {
+            patch.run();
+        }
+    }
+
+    private static void addCount(List<String> args, String path, ReactionType reactionType, long count) {
+        if (count != 0) {
+            args.add(countField(path, reactionType));
+            args.add(Long.toString(count));
+        }
+    }
+
+    private static int rootId(int commentId, String path) {
+        List<Integer> ancestorIds = CommentPath.ancestorIds(path);
+        return ancestorIds.isEmpty() ? commentId : ancestorIds.get(0);
+    }
+
+    private static String countField(String path, ReactionType reactionType) {
+        return path + MEMBER_DELIMITER + reactionType;
+    }
+
+    // The keys of a thread share a hash tag, so the scripts can use them together on a Redis cluster
+    private static String key(int rootId) {
+        return KEY_PREFIX + "{" + rootId + "}";
+    }
+
+    private static String countsKey(int rootId) {
+        return key(rootId) + ":counts";
+    }
+
+    private static String stateKey(int rootId) {
+        return key(rootId) + ":state";
+    }
+
+    private static String versionKey(int rootId) {
+        return key(rootId) + ":version";
+    }
+
+    private static String recentWriteKey(int rootId) {
+        return key(rootId) + ":recent-write";
+    }
+
+    private static List<String> keys(int rootId) {
+        return List.of(key(rootId), countsKey(rootId), stateKey(rootId));
+    }
+
+    private static List<String> writeKeys(int rootId) {
+        return List.of(key(rootId), countsKey(rootId), stateKey(rootId), versionKey(rootId), recentWriteKey(rootId));
+    }
+
+    private static String encode(SnapshotRow row) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(row);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode snapshot row of comment: " + row.id(), e);
+        }
+    }
+
+    private static SnapshotRow decodeRow(String value) {
+        try {
+            return OBJECT_MAPPER.readValue(value, SnapshotRow.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to decode snapshot row: " + value, e);
+        }
+    }
+
+    // The counts are in the order of COUNT_TYPES
+    private record ThreadRow(String path, SnapshotRow comment, long[] counts) {}
+
+    /**
+     * A comment as stored in a snapshot, after its path. Its reply and reaction counts are not stored with it, they
+     * are worked out when the snapshot is read.
+     */
+    record SnapshotRow(int id, int parentId, int level, String user, String body, Long created, Long updated,
+                       Boolean isDeleted) {
+        static SnapshotRow of(Comment comment) {
+            return new SnapshotRow(comment.getId(), comment.getParentId(), comment.getLevel(), comment.getUser(),
+                    comment.getBody(), time(comment.getCreatedAt()), time(comment.getUpdatedAt()), comment.getIsDeleted());
+        }
+
+        static SnapshotRow of(CommentReply reply) {
+            return new SnapshotRow(reply.getId(), reply.getParentId(), reply.getLevel(), reply.getUser(),
+                    reply.getBody(), time(reply.getCreated()), time(reply.getUpdated()), reply.getIsDeleted());
+        }
+
+        CommentReply reply(Long replies, long[] counts) {
+            CommentReply reply = CommentReply.builder()
+                    .id(id)
+                    .parentId(parentId)
+                    .level(level)
+                    .user(user)
+                    .body(body)
+                    .created(created != null ? new Date(created) : null)
+                    .updated(updated != null ? new Date(updated) : null)
+                    .isDeleted(isDeleted)
+                    .replies(replies)
+                    .build();
+            for (int i = 0; i < COUNT_TYPES.length; i++) {
+                setCount(reply, COUNT_TYPES[i], counts[i]);
+            }
+            return reply;
+        }
+
+        private static Long time(Date date) {
+            return date != null ? date.getTime() : null;
+        }
+    }
+}
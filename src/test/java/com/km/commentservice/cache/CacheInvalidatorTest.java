@@ -0,0 +1,107 @@
+package com.km.commentservice.cache;
+
+import java.time.Instant;
+
+import com.km.commentservice.model.ReactionType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static com.km.commentservice.Constants.FULL_TREE_CACHE;
+import static com.km.commentservice.Constants.NEXT_LEVEL_CACHE;
+import static com.km.commentservice.Constants.REACTION_USERS_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author karanm
+ */
+@RunWith(MockitoJUnitRunner.class)
+class CacheInvalidatorTest {
+    @Spy
+    private CacheManager cacheManager = new ConcurrentMapCacheManager(FULL_TREE_CACHE, NEXT_LEVEL_CACHE, REACTION_USERS_CACHE);
+
+    @Mock
+    private ObjectProvider<TaskScheduler> taskSchedulerProvider;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @InjectMocks
+    private CacheInvalidator cacheInvalidator;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void evictCommentTreeEvictsOnlyAncestorEntries() {
+        Cache fullTree = cacheManager.getCache(FULL_TREE_CACHE);
+        Cache nextLevel = cacheManager.getCache(NEXT_LEVEL_CACHE);
+        fullTree.put("0-5", "all");
+        fullTree.put("1-5", "thread 1");
+        fullTree.put("4-2", "sub thread 4");
+        fullTree.put("12-5", "thread 12");
+        fullTree.put("7-5", "unrelated thread");
+        nextLevel.put("4-0-10-null", "level below 4");
+        nextLevel.put("14-0-10-null", "level below 14");
+
+        cacheInvalidator.evictCommentTree("1-4-9");
+
+        assertNull(fullTree.get("0-5"));
+        assertNull(fullTree.get("1-5"));
+        assertNull(fullTree.get("4-2"));
+        assertNull(nextLevel.get("4-0-10-null"));
+        assertNotNull(fullTree.get("12-5"));
+        assertNotNull(fullTree.get("7-5"));
+        assertNotNull(nextLevel.get("14-0-10-null"));
+    }
+
+    @Test
+    void evictReactionUsersEvictsOnlyGivenCommentAndTypes() {
+        Cache users = cacheManager.getCache(REACTION_USERS_CACHE);
+        users.put("3-LIKE-0-10", "likes");
+        users.put("3-LIKE-1-10", "more likes");
+        users.put("3-DISLIKE-0-10", "dislikes");
+        users.put("33-LIKE-0-10", "likes of another comment");
+
+        cacheInvalidator.evictReactionUsers(3, ReactionType.LIKE);
+
+        assertNull(users.get("3-LIKE-0-10"));
+        assertNull(users.get("3-LIKE-1-10"));
+        assertNotNull(users.get("3-DISLIKE-0-10"));
+        assertNotNull(users.get("33-LIKE-0-10"));
+    }
+
+    @Test
+    void evictCommentTreeEvictsAgainAfterReplicaLag() {
+        ReflectionTestUtils.setField(cacheInvalidator, "replicaReads", true);
+        when(taskSchedulerProvider.getIfAvailable()).thenReturn(taskScheduler);
+        Cache fullTree = cacheManager.getCache(FULL_TREE_CACHE);
+        fullTree.put("1-5", "thread 1");
+
+        cacheInvalidator.evictCommentTree("1-4");
+        assertNull(fullTree.get("1-5"));
+
+        //A read from a lagging replica caches the state from before the change again
+        fullTree.put("1-5", "stale thread 1");
+        ArgumentCaptor<Runnable> eviction = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler, times(1)).schedule(eviction.capture(), any(Instant.class));
+        eviction.getValue().run();
+        assertNull(fullTree.get("1-5"));
+        verify(taskScheduler, times(1)).schedule(any(Runnable.class), any(Instant.class));
+    }
+}
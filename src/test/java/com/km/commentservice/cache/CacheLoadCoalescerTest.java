@@ -0,0 +1,160 @@
+package com.km.commentservice.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.km.commentservice.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static com.km.commentservice.Constants.FULL_TREE_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author karanm
+ */
+class CacheLoadCoalescerTest {
+    @Mock
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private CacheLoadCoalescer cacheLoadCoalescer;
+
+    private final Cache cache = new ConcurrentMapCache(FULL_TREE_CACHE);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplateProvider.getIfAvailable()).thenReturn(redisTemplate);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(() -> cacheLoadCoalescer.load(cache, "1-5", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "tree";
+            })));
+        }
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<Object> future : futures) {
+            assertEquals("tree", future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals("tree", cache.get("1-5").get());
+    }
+
+    @Test
+    void failedLoadIsThrownAndRetriedByTheNextMiss() {
+        assertThrows(ResourceNotFoundException.class, () -> cacheLoadCoalescer.load(cache, "1-5", () -> {
+            loads.incrementAndGet();
+            throw new ResourceNotFoundException("Comment not found");
+        }));
+
+        assertEquals("tree", cacheLoadCoalescer.load(cache, "1-5", this::loadTree));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void loadRereadsTheCacheBeforeLoading() {
+        cache.put("1-5", "cached");
+
+        assertEquals("cached", cacheLoadCoalescer.load(cache, "1-5", this::loadTree));
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void distributedLoadHoldsTheLockWhileLoading() {
+        ReflectionTestUtils.setField(cacheLoadCoalescer, "distributed", true);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+        assertEquals("tree", cacheLoadCoalescer.load(cache, "1-5", this::loadTree));
+
+        assertEquals(1, loads.get());
+        verify(valueOperations).setIfAbsent(eq("commentservice:cache-load:" + FULL_TREE_CACHE + ":1-5"), anyString(),
+                any(Duration.class));
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("commentservice:cache-load:" + FULL_TREE_CACHE + ":1-5")),
+                anyString());
+    }
+
+    @Test
+    void distributedLoadWaitsForTheNodeHoldingTheLock() throws Exception {
+        ReflectionTestUtils.setField(cacheLoadCoalescer, "distributed", true);
+        ReflectionTestUtils.setField(cacheLoadCoalescer, "pollInterval", 10L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        ExecutorService otherNode = Executors.newSingleThreadExecutor();
+        otherNode.submit(() -> {
+            Thread.sleep(100);
+            cache.put("1-5", "loaded elsewhere");
+            return null;
+        });
+
+        assertEquals("loaded elsewhere", cacheLoadCoalescer.load(cache, "1-5", this::loadTree));
+        otherNode.shutdown();
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void distributedLoadLoadsItselfWhenTheLockExpires() {
+        ReflectionTestUtils.setField(cacheLoadCoalescer, "distributed", true);
+        ReflectionTestUtils.setField(cacheLoadCoalescer, "pollInterval", 10L);
+        ReflectionTestUtils.setField(cacheLoadCoalescer, "lockTimeout", 50L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        assertEquals("tree", cacheLoadCoalescer.load(cache, "1-5", this::loadTree));
+        assertEquals(1, loads.get());
+    }
+
+    private String loadTree() {
+        loads.incrementAndGet();
+        return "tree";
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
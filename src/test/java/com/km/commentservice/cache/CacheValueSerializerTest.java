@@ -0,0 +1,77 @@
+package com.km.commentservice.cache;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.dto.NestedCommentReply;
+import com.km.commentservice.dto.ReactionReply;
+import com.km.commentservice.model.ReactionType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author karanm
+ */
+class CacheValueSerializerTest {
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    void smileRoundTripKeepsTreeAndCompressesLargeValues() {
+        CacheValueSerializer serializer = new CacheValueSerializer(CacheValueCodec.SMILE, CacheCompression.LZ4, 256, classLoader);
+        NestedCommentReply tree = tree(50);
+
+        byte[] encoded = serializer.serialize(tree);
+        NestedCommentReply decoded = (NestedCommentReply) serializer.deserialize(encoded);
+
+        assertTrue(encoded.length < new JdkSerializationRedisSerializer(classLoader).serialize(tree).length / 4);
+        assertEquals(5, decoded.getMaxDepth());
+        assertEquals(50, decoded.getNestedCommentReplies().size());
+        CommentReply first = decoded.getNestedCommentReplies().get(0).getCommentReply();
+        assertEquals(tree.getNestedCommentReplies().get(0).getCommentReply(), first);
+        assertEquals(1, decoded.getNestedCommentReplies().get(0).getNestedCommentReplies().size());
+    }
+
+    @Test
+    void readsValuesOfOtherCodecsAndLegacyJdkValues() {
+        CacheValueSerializer smile = new CacheValueSerializer(CacheValueCodec.SMILE, CacheCompression.NONE, 0, classLoader);
+        CacheValueSerializer jdk = new CacheValueSerializer(CacheValueCodec.JDK, CacheCompression.LZ4, 0, classLoader);
+        ReactionReply reply = ReactionReply.builder().commentId(1).reactionType(ReactionType.LIKE)
+                .users(List.of("km", "user1")).pageNo(0).pageSize(10).size(2).build();
+
+        ReactionReply fromJdk = (ReactionReply) smile.deserialize(jdk.serialize(reply));
+        ReactionReply fromLegacy = (ReactionReply) smile.deserialize(new JdkSerializationRedisSerializer(classLoader).serialize(reply));
+        ReactionReply fromSmile = (ReactionReply) jdk.deserialize(smile.serialize(reply));
+
+        for (ReactionReply decoded : List.of(fromJdk, fromLegacy, fromSmile)) {
+            assertEquals(List.of("km", "user1"), decoded.getUsers());
+            assertEquals(ReactionType.LIKE, decoded.getReactionType());
+        }
+    }
+
+    @Test
+    void unreadableValueIsAMiss() {
+        CacheValueSerializer serializer = new CacheValueSerializer(CacheValueCodec.SMILE, CacheCompression.NONE, 0, classLoader);
+        byte[] encoded = serializer.serialize(tree(1));
+
+        assertNull(serializer.deserialize(new byte[]{1, 2, 3}));
+        assertNull(serializer.deserialize(Arrays.copyOf(encoded, encoded.length / 2)));
+    }
+
+    private static NestedCommentReply tree(int size) {
+        NestedCommentReply top = new NestedCommentReply().withMaxDepth(5);
+        Date now = new Date();
+        for (int i = 0; i < size; i++) {
+            NestedCommentReply node = new NestedCommentReply();
+            node.setCommentReply(new CommentReply(i + 2, "user" + i % 3, "comment body " + i, 1, 1L, 3L, 0L, 1, now, now, false));
+            NestedCommentReply reply = new NestedCommentReply();
+            reply.setCommentReply(new CommentReply(size + i + 2, "km", "reply", i + 2, 0L, 0L, 0L, 2, now, now, false));
+            node.addReply(reply);
+            top.addReply(node);
+        }
+        return top;
+    }
+}
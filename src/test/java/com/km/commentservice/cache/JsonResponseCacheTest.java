@@ -0,0 +1,77 @@
+package com.km.commentservice.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.dto.NestedCommentReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static com.km.commentservice.Constants.FULL_TREE_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author karanm
+ */
+@RunWith(MockitoJUnitRunner.class)
+class JsonResponseCacheTest {
+    @Spy
+    private CacheManager cacheManager = new ConcurrentMapCacheManager(FULL_TREE_CACHE);
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private CacheLoadCoalescer cacheLoadCoalescer = new CacheLoadCoalescer();
+
+    @InjectMocks
+    private JsonResponseCache jsonResponseCache;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void getCachesSerializedBytesWithEtag() throws Exception {
+        ResponseEntity<?> first = jsonResponseCache.get(FULL_TREE_CACHE, "1-5", this::loadTree);
+        ResponseEntity<?> second = jsonResponseCache.get(FULL_TREE_CACHE, "1-5", this::loadTree);
+
+        assertEquals(1, loads.get());
+        assertArrayEquals(objectMapper.writeValueAsBytes(loadTree()), (byte[]) second.getBody());
+        assertEquals(MediaType.APPLICATION_JSON, second.getHeaders().getContentType());
+        assertNotNull(first.getHeaders().getETag());
+        assertEquals(first.getHeaders().getETag(), second.getHeaders().getETag());
+        assertNotNull(cacheManager.getCache(FULL_TREE_CACHE).get("1-5-json"));
+    }
+
+    @Test
+    void getCachesRepliesWhenJsonBytesDisabled() {
+        ReflectionTestUtils.setField(jsonResponseCache, "jsonBytesEnabled", false);
+
+        jsonResponseCache.get(FULL_TREE_CACHE, "1-5", this::loadTree);
+        ResponseEntity<?> response = jsonResponseCache.get(FULL_TREE_CACHE, "1-5", this::loadTree);
+
+        assertEquals(1, loads.get());
+        assertInstanceOf(NestedCommentReply.class, response.getBody());
+        assertNull(response.getHeaders().getETag());
+        assertNull(cacheManager.getCache(FULL_TREE_CACHE).get("1-5-json"));
+    }
+
+    private NestedCommentReply loadTree() {
+        loads.incrementAndGet();
+        return new NestedCommentReply().withMaxDepth(5).withSize(0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.km.commentservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author karanm
+ */
+@RunWith(MockitoJUnitRunner.class)
+class TwoLevelCacheTest {
+    @Mock
+    private RedisCache remoteCache;
+
+    @Mock
+    private TwoLevelCache.InvalidationChannel channel;
+
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(channel.isSubscribed()).thenReturn(true);
+        com.github.benmanes.caffeine.cache.Cache<Object, Cache.ValueWrapper> localCache =
+                Caffeine.newBuilder().maximumSize(100).recordStats().build();
+        cache = new TwoLevelCache("fulltree", localCache, remoteCache, channel);
+    }
+
+    @Test
+    void getReadsRedisOnlyOnLocalMiss() {
+        when(remoteCache.get("1-5")).thenReturn(new SimpleValueWrapper("tree"));
+
+        assertEquals("tree", cache.get("1-5").get());
+        assertEquals("tree", cache.get("1-5").get());
+
+        verify(remoteCache, times(1)).get("1-5");
+        assertEquals(1, cache.localHitCount());
+        assertEquals(1, cache.remoteHitCount());
+    }
+
+    @Test
+    void evictByPrefixEvictsBothTiersAndPublishes() {
+        cache.put("1-5", "thread 1");
+        cache.put("12-5", "thread 12");
+
+        cache.evictByPrefix("1-");
+
+        verify(remoteCache, times(1)).clear("1-*");
+        verify(channel, times(1)).publish("fulltree", TwoLevelCache.Invalidation.PREFIX, "1-");
+        assertNull(cache.get("1-5"));
+        assertEquals("thread 12", cache.get("12-5").get());
+    }
+
+    @Test
+    void invalidateLocalLeavesRedisToTheEvictingNode() {
+        cache.put("1-5", "thread 1");
+        when(remoteCache.get("1-5")).thenReturn(new SimpleValueWrapper("thread 1 after reply"));
+
+        cache.invalidateLocal(TwoLevelCache.Invalidation.KEY, "1-5");
+
+        assertEquals("thread 1 after reply", cache.get("1-5").get());
+        verify(remoteCache, never()).evict(any());
+        verify(channel, never()).publish(any(), any(), any());
+    }
+
+    @Test
+    void getBypassesLocalTierUntilSubscribed() {
+        when(channel.isSubscribed()).thenReturn(false);
+        when(remoteCache.get("1-5")).thenReturn(new SimpleValueWrapper("tree"));
+
+        cache.put("1-5", "tree");
+        cache.get("1-5");
+        cache.get("1-5");
+
+        verify(remoteCache, times(2)).get("1-5");
+        assertEquals(0, cache.localSize());
+    }
+
+    @Test
+    void getDropsValueReadFromRedisWhileEvicted() {
+        when(remoteCache.get("1-5")).thenAnswer(invocation -> {
+            // Another request evicts the entry after this read got the old value from Redis
+            cache.invalidateLocal(TwoLevelCache.Invalidation.ALL, null);
+            return new SimpleValueWrapper("stale");
+        });
+
+        assertEquals("stale", cache.get("1-5").get());
+        when(remoteCache.get("1-5")).thenReturn(null);
+
+        assertNull(cache.get("1-5"));
+    }
+}
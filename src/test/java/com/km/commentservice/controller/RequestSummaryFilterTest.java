@@ -0,0 +1,123 @@
+package com.km.commentservice.controller;
+
+import java.util.List;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author karanm
+ */
+class RequestSummaryFilterTest {
+    private final RequestSummaryFilter requestSummaryFilter = new RequestSummaryFilter();
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(RequestSummaryFilter.class);
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    private Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        previousLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        appender.start();
+        logger.addAppender(appender);
+        ReflectionTestUtils.setField(requestSummaryFilter, "slowRequestThreshold", 60000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(previousLevel);
+    }
+
+    @Test
+    void sampledRequestIsSummarizedAtInfoByRoute() throws Exception {
+        ReflectionTestUtils.setField(requestSummaryFilter, "sampleRate", 1.0);
+
+        filter(200);
+
+        assertEquals(1, appender.list.size());
+        ILoggingEvent event = appender.list.get(0);
+        assertEquals(Level.INFO, event.getLevel());
+        assertTrue(event.getFormattedMessage().startsWith("method=GET route=/v1/comment/{parentId}/fulltree status=200 durationMs="));
+    }
+
+    @Test
+    void unsampledRequestIsNotSummarized() throws Exception {
+        ReflectionTestUtils.setField(requestSummaryFilter, "sampleRate", 0.0);
+
+        filter(200);
+
+        assertEquals(List.of(), appender.list);
+    }
+
+    @Test
+    void serverErrorsAndSlowRequestsAreAlwaysSummarizedAtWarn() throws Exception {
+        ReflectionTestUtils.setField(requestSummaryFilter, "sampleRate", 0.0);
+        filter(500);
+
+        ReflectionTestUtils.setField(requestSummaryFilter, "slowRequestThreshold", 0L);
+        filter(200);
+
+        assertEquals(List.of(Level.WARN, Level.WARN), appender.list.stream().map(ILoggingEvent::getLevel).toList());
+        assertTrue(appender.list.get(0).getFormattedMessage().contains("status=500"));
+        assertTrue(appender.list.get(1).getFormattedMessage().contains("status=200"));
+    }
+
+    @Test
+    void requestFailingWithAnExceptionIsSummarizedAsServerErrorAtWarn() {
+        ReflectionTestUtils.setField(requestSummaryFilter, "sampleRate", 0.0);
+        MockHttpServletRequest request = request();
+        FilterChain failingChain = (servletRequest, servletResponse) -> {
+            throw new IllegalStateException("database unavailable");
+        };
+
+        assertThrows(IllegalStateException.class,
+                () -> requestSummaryFilter.doFilter(request, new MockHttpServletResponse(), failingChain));
+
+        assertEquals(1, appender.list.size());
+        assertEquals(Level.WARN, appender.list.get(0).getLevel());
+        assertTrue(appender.list.get(0).getFormattedMessage().contains("status=500"));
+    }
+
+    @Test
+    void sampledSummariesFollowTheLoggerLevel() throws Exception {
+        ReflectionTestUtils.setField(requestSummaryFilter, "sampleRate", 1.0);
+
+        logger.setLevel(Level.WARN);
+        filter(200);
+        assertEquals(List.of(), appender.list);
+
+        logger.setLevel(Level.DEBUG);
+        filter(200);
+        assertEquals(1, appender.list.size());
+    }
+
+    private void filter(int status) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(status);
+        requestSummaryFilter.doFilter(request(), response, new MockFilterChain());
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/comment/7/fulltree");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/v1/comment/{parentId}/fulltree");
+        return request;
+    }
+}
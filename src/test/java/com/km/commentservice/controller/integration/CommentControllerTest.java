@@ -1,9 +1,11 @@
 package com.km.commentservice.controller.integration;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.km.commentservice.CommentserviceApplication;
 import com.km.commentservice.controller.CommentController;
@@ -12,11 +14,14 @@ import com.km.commentservice.dto.CommentPostRequest;
 import com.km.commentservice.dto.CommentReply;
 import com.km.commentservice.dto.NestedCommentReply;
 import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.service.CommentIdAllocator;
 import com.km.commentservice.service.CommentService;
 import com.km.commentservice.utils.TestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,12 +32,15 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -46,6 +54,9 @@ class CommentControllerTest {
 	@MockBean
 	private CommentDAO commentDAO;
 
+	@MockBean
+	private CommentIdAllocator commentIdAllocator;
+
 	@Autowired
 	private CommentService commentService;
 
@@ -65,7 +76,7 @@ class CommentControllerTest {
 	@Test
 	void getSingleComment() throws Exception {
 		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+				new Comment(1, "test", 0, "1", 0, "km", false, 0L)));
 
 		MockHttpServletResponse result = mockMvc.perform(get("/v1/comment/1")).andReturn().getResponse();
 
@@ -78,8 +89,8 @@ class CommentControllerTest {
 				TestUtils.getFileContents("testing/comment-dao-flat-response.json"),
 				new TypeReference<List<CommentReply>>() {});
 
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
 
 		when(commentDAO.getCommentTreeById(anyString(), anyInt(), anyInt())).thenReturn(commentDbResponse);
 
@@ -99,14 +110,50 @@ class CommentControllerTest {
 		assertTrue(TestUtils.assertNestedReplyEqual(expectedNestedCommentReply, actualNestedCommentReply));
 	}
 
+	@Test
+	void streamFullTreeWithMaxDepth() throws Exception {
+		List<CommentReply> commentDbResponse = objectMapper.readValue(
+				TestUtils.getFileContents("testing/comment-dao-flat-response.json"),
+				new TypeReference<List<CommentReply>>() {});
+
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
+
+		// Rows are written as they come, so they have to be in path order as the tree query returns them
+		Comparator<CommentReply> pathOrder = Comparator
+				.comparing((CommentReply reply) -> reply.getParentId() == 0 ? reply.getId() : reply.getParentId())
+				.thenComparing(reply -> reply.getParentId() == 0 ? 0 : reply.getId());
+		when(commentDAO.streamCommentTreeById(anyString(), anyInt(), anyInt()))
+				.thenReturn(commentDbResponse.stream().sorted(pathOrder));
+
+		MvcResult asyncResult = mockMvc
+				.perform(get("/v1/comment/1/fulltree/stream?maxDepth=2"))
+				.andReturn();
+		MockHttpServletResponse result = mockMvc.perform(asyncDispatch(asyncResult)).andReturn().getResponse();
+
+		assertEquals(200, result.getStatus());
+		assertTrue(MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(result.getContentType())));
+
+		JsonNode streamed = objectMapper.readTree(result.getContentAsString());
+		assertTrue(streamed.get("comments").isArray());
+
+		NestedCommentReply expectedNestedCommentReply = objectMapper.readValue(
+				TestUtils.getFileContents("testing/comment-nested-response.json"),
+				NestedCommentReply.class);
+
+		NestedCommentReply actualNestedCommentReply = objectMapper.treeToValue(streamed, NestedCommentReply.class);
+
+		assertTrue(TestUtils.assertNestedReplyEqual(expectedNestedCommentReply, actualNestedCommentReply));
+	}
+
 	@Test
 	void getCommentsAtLevelPaginated() throws Exception {
 		List<CommentReply> commentDbResponse = objectMapper.readValue(
 				TestUtils.getFileContents("testing/comment-dao-flat-response-single-level.json"),
 				new TypeReference<List<CommentReply>>() {});
 
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
 
 		when(commentDAO.getCommentsAtLevel(anyString(), anyInt(), any())).thenReturn(commentDbResponse);
 
@@ -129,9 +176,9 @@ class CommentControllerTest {
 	@Test
 	void postComment() throws Exception {
 		String commentPostRequest = TestUtils.getFileContents("testing/comment-post-request.json");
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
-		when(commentDAO.save(any(Comment.class))).thenAnswer(i -> i.getArguments()[0]);
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
+		when(commentIdAllocator.nextId()).thenReturn(2);
 
 		MockHttpServletResponse result = mockMvc
 				.perform(post("/v1/comment/")
@@ -145,6 +192,14 @@ class CommentControllerTest {
 		assertEquals(expectedReply.getBody(), actualReply.getBody());
 		assertEquals(expectedReply.getParentId(), actualReply.getParentId());
 		assertEquals(expectedReply.getUser(),actualReply.getUser());
+		assertEquals(2, actualReply.getId());
+
+		// The comment is inserted once with its id and path, never merged
+		ArgumentCaptor<Comment> comment = ArgumentCaptor.forClass(Comment.class);
+		verify(commentDAO).persist(comment.capture());
+		assertEquals(2, comment.getValue().getId());
+		assertEquals("1-2", comment.getValue().getPath());
+		verify(commentDAO, never()).save(any(Comment.class));
 	}
 
 	@Test
@@ -161,7 +216,7 @@ class CommentControllerTest {
 	void updateComment() throws Exception {
 		String commentPostRequest = TestUtils.getFileContents("testing/comment-put-request.json");
 		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "John Doe", false)));
+				new Comment(1, "test", 0, "1", 0, "John Doe", false, 0L)));
 		when(commentDAO.save(any(Comment.class))).thenAnswer(i -> i.getArguments()[0]);
 
 		MockHttpServletResponse result = mockMvc
@@ -175,6 +230,7 @@ class CommentControllerTest {
 		assertEquals(200, result.getStatus());
 		assertEquals(expectedReply.getBody(), actualReply.getBody());
 		assertEquals(expectedReply.getUser(),actualReply.getUser());
+		verify(commentDAO).save(argThat(comment -> expectedReply.getBody().equals(comment.getBody())));
 	}
 
 	@Test
@@ -203,6 +259,7 @@ class CommentControllerTest {
 
 		CommentReply actualReply = objectMapper.readValue(result.getContentAsString(), CommentReply.class);
 		assertTrue(actualReply.getIsDeleted());
+		verify(commentDAO).save(argThat(Comment::getIsDeleted));
 	}
 
 }
\ No newline at end of file
@@ -14,7 +14,7 @@ import com.km.commentservice.dto.CommentReply;
 import com.km.commentservice.dto.NestedCommentReply;
 import com.km.commentservice.dto.ReactionReply;
 import com.km.commentservice.dto.ReactionRequest;
-import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
 import com.km.commentservice.model.Reaction;
 import com.km.commentservice.model.ReactionId;
 import com.km.commentservice.model.ReactionType;
@@ -75,8 +75,8 @@ class ReactionControllerTest {
 
 	@Test
 	void getUsersForReaction() throws Exception {
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
 
 		List<Reaction> reactionDbResponse = objectMapper.readValue(
 				TestUtils.getFileContents("testing/reaction-dao-response.json"),
@@ -99,8 +99,8 @@ class ReactionControllerTest {
 	@Test
 	void postReactionToComment() throws Exception {
 		String reactionPostRequest = TestUtils.getFileContents("testing/reaction-post-request.json");
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
 		when(reactionDAO.findById(any(ReactionId.class))).thenReturn(Optional.empty());
 
 		ReactionId reactionId = new ReactionId();
@@ -139,8 +139,8 @@ class ReactionControllerTest {
 	@Test
 	void updateReaction() throws Exception {
 		String reactionPatchRequest = TestUtils.getFileContents("testing/reaction-patch-request.json");
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
 
 		//different reaction as before
 		ReactionId reactionId = new ReactionId();
@@ -183,8 +183,8 @@ class ReactionControllerTest {
 
 	@Test
 	void deleteReaction() throws Exception {
-		when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-				new Comment(1, "test", 0, "1", 0, "km", false)));
+		when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+				new CommentHeader(1, 0, "1", 0, false, "km")));
 		ReactionId reactionId = new ReactionId();
 		reactionId.setCommentId(1);
 		reactionId.setUser("John Doe");
@@ -0,0 +1,228 @@
+package com.km.commentservice.counter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dao.ReactionCountDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+import com.km.commentservice.snapshot.CommentTreeSnapshotStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author karanm
+ */
+class WriteBehindReactionCounterTest {
+    @Mock
+    private ReactionCountDAO reactionCountDAO;
+
+    @Mock
+    private CommentDAO commentDAO;
+
+    @Mock
+    private CacheInvalidator cacheInvalidator;
+
+    @Mock
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private WriteBehindReactionCounter reactionCounter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(commentDAO.findHeadersByIdIn(anyList())).thenReturn(List.of(new CommentHeader(1, 0, "1", 0, false, "km")));
+    }
+
+    @Test
+    void pendingChangesAreAddedToReadsBeforeFlush() {
+        reactionCounter.increment(1, ReactionType.LIKE);
+        reactionCounter.increment(1, ReactionType.LIKE);
+        reactionCounter.decrement(1, ReactionType.DISLIKE);
+
+        CommentReply commentReply = CommentReply.builder().id(1).likeCount(3L).dislikeCount(2L).build();
+        reactionCounter.applyPendingDeltas(commentReply);
+
+        assertEquals(5L, commentReply.getLikeCount());
+        assertEquals(1L, commentReply.getDislikeCount());
+        verifyNoInteractions(reactionCountDAO);
+    }
+
+    @Test
+    void batchChangesAreAddedToTheirCounts() {
+        reactionCounter.increment(1, ReactionType.LIKE);
+        reactionCounter.add(Map.of(reactionCountId(1, ReactionType.LIKE), 4L, reactionCountId(1, ReactionType.DISLIKE), -2L));
+
+        assertEquals(5L, reactionCounter.pendingDelta(1, ReactionType.LIKE));
+        assertEquals(-2L, reactionCounter.pendingDelta(1, ReactionType.DISLIKE));
+        verifyNoInteractions(reactionCountDAO);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushWritesSummedChangesOnceAndEvictsTrees() {
+        reactionCounter.increment(1, ReactionType.LIKE);
+        reactionCounter.increment(1, ReactionType.LIKE);
+        reactionCounter.decrement(1, ReactionType.LIKE);
+
+        reactionCounter.flush();
+
+        ArgumentCaptor<Map<ReactionCountId, Long>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(reactionCountDAO, times(1)).applyReactionCountDeltas(deltas.capture());
+        assertEquals(Map.of(reactionCountId(1, ReactionType.LIKE), 1L), deltas.getValue());
+        verify(cacheInvalidator, times(1)).evictCommentTrees(argThat(paths -> List.copyOf(paths).equals(List.of("1"))));
+        assertEquals(0, reactionCounter.pendingDelta(1, ReactionType.LIKE));
+
+        reactionCounter.flush();
+        verify(reactionCountDAO, times(1)).applyReactionCountDeltas(anyMap());
+    }
+
+    @Test
+    void flushPatchesSnapshotsAndEvictsTreesAfterSubtractingTheFlushedChanges() {
+        List<Long> pendingAtEviction = new ArrayList<>();
+        doAnswer(invocation -> {
+            pendingAtEviction.add(reactionCounter.pendingDelta(1, ReactionType.LIKE));
+            return null;
+        }).when(cacheInvalidator).evictCommentTrees(anyCollection());
+        reactionCounter.increment(1, ReactionType.LIKE);
+
+        reactionCounter.flush();
+
+        // A tree read and cached before the eviction would count the flushed change twice
+        assertEquals(List.of(0L), pendingAtEviction);
+        InOrder inOrder = inOrder(reactionCountDAO, commentTreeSnapshotStore, cacheInvalidator);
+        inOrder.verify(reactionCountDAO).applyReactionCountDeltas(anyMap());
+        inOrder.verify(commentTreeSnapshotStore).reactionCountsChanged(eq(Map.of(reactionCountId(1, ReactionType.LIKE), 1L)), any());
+        inOrder.verify(cacheInvalidator).evictCommentTrees(anyCollection());
+    }
+
+    @Test
+    void failedFlushKeepsChangesForTheNextFlush() {
+        reactionCounter.increment(1, ReactionType.LIKE);
+        doThrow(new RuntimeException("db down")).doNothing().when(reactionCountDAO).applyReactionCountDeltas(anyMap());
+
+        reactionCounter.flush();
+        assertEquals(1, reactionCounter.pendingDelta(1, ReactionType.LIKE));
+
+        reactionCounter.flush();
+        verify(reactionCountDAO, times(2)).applyReactionCountDeltas(Map.of(reactionCountId(1, ReactionType.LIKE), 1L));
+        assertEquals(0, reactionCounter.pendingDelta(1, ReactionType.LIKE));
+    }
+
+    @Test
+    void concurrentChangesAreFlushedExactlyOnce() throws Exception {
+        AtomicLong flushedTotal = new AtomicLong();
+        doAnswer(invocation -> {
+            Map<ReactionCountId, Long> deltas = invocation.getArgument(0);
+            deltas.values().forEach(flushedTotal::addAndGet);
+            return null;
+        }).when(reactionCountDAO).applyReactionCountDeltas(anyMap());
+
+        int threads = 8;
+        int incrementsPerThread = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < incrementsPerThread; j++) {
+                    reactionCounter.increment(1, ReactionType.LIKE);
+                }
+            }));
+        }
+        while (futures.stream().anyMatch(future -> !future.isDone())) {
+            reactionCounter.flush();
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals((long) threads * incrementsPerThread,
+                flushedTotal.get() + reactionCounter.pendingDelta(1, ReactionType.LIKE));
+        reactionCounter.shutdown();
+        assertEquals((long) threads * incrementsPerThread, flushedTotal.get());
+    }
+
+    @Test
+    void metricsReportPendingCountsAndFlushes() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        reactionCounter.bindTo(registry);
+
+        reactionCounter.increment(1, ReactionType.LIKE);
+        reactionCounter.increment(2, ReactionType.LIKE);
+        assertEquals(2, registry.get("commentservice.reaction-count.pending").gauge().value());
+        assertTrue(registry.get("commentservice.reaction-count.flush.lag").gauge().value() >= 0);
+
+        reactionCounter.flush();
+        assertEquals(0, registry.get("commentservice.reaction-count.pending").gauge().value());
+        assertEquals(0, registry.get("commentservice.reaction-count.flush.lag").gauge().value());
+        assertEquals(1, registry.get("commentservice.reaction-count.flush").timer().count());
+    }
+
+    @Test
+    void flushDoesNotPinVirtualThreads() throws Exception {
+        doAnswer(invocation -> {
+            // Blocks like a JDBC round trip would
+            Thread.sleep(50);
+            return null;
+        }).when(reactionCountDAO).applyReactionCountDeltas(anyMap());
+
+        Path file = Files.createTempFile("pinned-threads", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+            recording.start();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < 4; i++) {
+                    executor.submit(() -> {
+                        reactionCounter.increment(1, ReactionType.LIKE);
+                        reactionCounter.flush();
+                    });
+                }
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> pinnedEvents = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        assertEquals(List.of(), pinnedEvents);
+        assertEquals(0, reactionCounter.pendingDelta(1, ReactionType.LIKE));
+    }
+
+    private static ReactionCountId reactionCountId(Integer commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(commentId);
+        reactionCountId.setReactionType(reactionType);
+        return reactionCountId;
+    }
+}
@@ -0,0 +1,90 @@
+package com.km.commentservice.datasource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routes between two embedded H2 databases standing in for the primary and a replica, each holding its own name.
+ *
+ * @author karanm
+ */
+class ReadWriteRoutingDataSourceTest {
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readWriteTransaction;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private final AtomicInteger firstWrites = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        DataSource routingDataSource = ReadWriteRoutingDataSource.lazy(database("primary"), database("replica"));
+        jdbcTemplate = new JdbcTemplate(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routingDataSource);
+        readWriteTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        PrimaryStickiness.end();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        assertEquals("replica", readOnlyTransaction.execute(status -> node()));
+    }
+
+    @Test
+    void writesAndReadsOutsideTransactionsGoToThePrimary() {
+        assertEquals("primary", readWriteTransaction.execute(status -> node()));
+        assertEquals("primary", node());
+    }
+
+    @Test
+    void readsOfAPinnedRequestGoToThePrimary() {
+        PrimaryStickiness.begin(true, firstWrites::incrementAndGet);
+
+        assertEquals("primary", readOnlyTransaction.execute(status -> node()));
+        assertEquals(0, firstWrites.get());
+    }
+
+    @Test
+    void readsAfterAWriteInTheSameRequestGoToThePrimary() {
+        PrimaryStickiness.begin(false, firstWrites::incrementAndGet);
+        assertEquals("replica", readOnlyTransaction.execute(status -> node()));
+
+        readWriteTransaction.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET writes = writes + 1"));
+        readWriteTransaction.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET writes = writes + 1"));
+
+        assertEquals("primary", readOnlyTransaction.execute(status -> node()));
+        assertEquals(1, firstWrites.get());
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS node");
+        jdbcTemplate.execute("CREATE TABLE node (name VARCHAR(16), writes INT)");
+        jdbcTemplate.update("INSERT INTO node VALUES (?, 0)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,109 @@
+package com.km.commentservice.datasource;
+
+import com.km.commentservice.config.DataSourceConfig;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routes the transactions of the JPA setup the service runs with, where Hibernate marks a transaction read only on the
+ * lazy connection proxy, between two embedded H2 databases standing in for the primary and a replica.
+ *
+ * @author karanm
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=" + ReadWriteRoutingJpaTest.PRIMARY_URL,
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "commentservice.datasource.replica.enabled=true",
+        "commentservice.datasource.replica.url=" + ReadWriteRoutingJpaTest.REPLICA_URL,
+        "spring.liquibase.enabled=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({DataSourceConfig.class, ReadWriteRoutingJpaTest.NodeReader.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReadWriteRoutingJpaTest {
+    static final String PRIMARY_URL = "jdbc:h2:mem:jpa-routing-primary;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:jpa-routing-replica;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private NodeReader nodeReader;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeAll
+    static void createDatabases() {
+        createNode(PRIMARY_URL, "primary");
+        createNode(REPLICA_URL, "replica");
+    }
+
+    @AfterEach
+    void tearDown() {
+        PrimaryStickiness.end();
+    }
+
+    @Test
+    void readOnlyServiceCallsGoToTheReplica() {
+        assertInstanceOf(JpaTransactionManager.class, transactionManager);
+        assertEquals("replica", nodeReader.readOnly());
+    }
+
+    @Test
+    void readWriteServiceCallsGoToThePrimary() {
+        assertEquals("primary", nodeReader.readWrite());
+    }
+
+    @Test
+    void readOnlyServiceCallsOfAPinnedRequestGoToThePrimary() {
+        PrimaryStickiness.begin(true, () -> {});
+
+        assertEquals("primary", nodeReader.readOnly());
+    }
+
+    private static void createNode(String url, String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        dataSource.setUser("sa");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS node");
+        jdbcTemplate.execute("CREATE TABLE node (name VARCHAR(16))");
+        jdbcTemplate.update("INSERT INTO node VALUES (?)", name);
+    }
+
+    @Component
+    static class NodeReader {
+        @PersistenceContext
+        private EntityManager entityManager;
+
+        @Transactional(readOnly = true)
+        public String readOnly() {
+            return node();
+        }
+
+        @Transactional
+        public String readWrite() {
+            return node();
+        }
+
+        private String node() {
+            return (String) entityManager.createNativeQuery("SELECT name FROM node").getSingleResult();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.km.commentservice.repository;
+
+import java.util.List;
+
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.CommentPath;
+import com.km.commentservice.service.CommentPathMigrator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Migrates legacy comment paths on an embedded H2 database and checks the order and prefix matches of the result.
+ *
+ * @author karanm
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pathmigration;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CommentPathMigrationTest {
+    @Autowired
+    private CommentDAO commentDAO;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void migrateRewritesLegacyPathsInDepthFirstIdOrder() {
+        // Comment 2 has the replies 3 and 10, comment 20 is a reply to 1 whose legacy path starts with the path of 2
+        insert(1, 0, "1", 0);
+        insert(2, 1, "1-2", 1);
+        insert(3, 2, "1-2-3", 2);
+        insert(10, 2, "1-2-10", 2);
+        insert(20, 1, "1-20", 1);
+        insert(9, 0, "9", 0);
+        insert(11, 0, CommentPath.of(null, 11), 0);
+
+        CommentPathMigrator migrator = new CommentPathMigrator();
+        ReflectionTestUtils.setField(migrator, "commentDAO", commentDAO);
+        ReflectionTestUtils.setField(migrator, "cacheInvalidator", mock(CacheInvalidator.class));
+        ReflectionTestUtils.setField(migrator, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(migrator, "batchSize", 2);
+
+        assertEquals(6, migrator.migrate());
+
+        assertTrue(commentDAO.findLegacyPaths(CommentPath.LEGACY_PATHS_START, 10).isEmpty());
+        assertEquals(List.of(1, 2, 3, 10, 20, 9, 11),
+                jdbcTemplate.queryForList("SELECT id FROM comment ORDER BY path", Integer.class));
+        assertEquals("/000001/000002/00000a", jdbcTemplate.queryForObject("SELECT path FROM comment WHERE id = 10", String.class));
+
+        String path = jdbcTemplate.queryForObject("SELECT path FROM comment WHERE id = 2", String.class);
+        assertEquals(List.of(3, 10), commentDAO.getCommentTreeById(path, 2, 5).stream().map(CommentReply::getId).toList());
+        assertEquals(List.of(1, 2), CommentPath.ancestorIds(CommentPath.of(path, 12)));
+    }
+
+    private void insert(int id, int parentId, String path, int level) {
+        jdbcTemplate.update("INSERT INTO comment (id, parent_id, path, level, body, user, is_deleted, descendant_count, " +
+                "created_at, updated_at) VALUES (?, ?, ?, ?, 'body', 'km', FALSE, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                id, parentId, path, level);
+    }
+}
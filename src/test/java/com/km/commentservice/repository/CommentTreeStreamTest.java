@@ -0,0 +1,73 @@
+package com.km.commentservice.repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.CommentPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Streams comment trees from an embedded H2 database, which rejects the negative fetch size MySQL streams with.
+ *
+ * @author karanm
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:treestream;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CommentTreeStreamTest {
+    @Autowired
+    private CommentDAO commentDAO;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM comment");
+    }
+
+    @Test
+    void streamCommentTreeByIdStreamsTheTreeInPathOrder() {
+        String rootPath = CommentPath.of(null, 1);
+        String replyPath = CommentPath.of(rootPath, 2);
+        insert(1, 0, rootPath, 0);
+        insert(2, 1, replyPath, 1);
+        insert(3, 2, CommentPath.of(replyPath, 3), 2);
+        insert(4, 1, CommentPath.of(rootPath, 4), 1);
+        insert(5, 0, CommentPath.of(null, 5), 0);
+
+        List<Integer> ids = new TransactionTemplate(transactionManager).execute(status -> {
+            try (Stream<CommentReply> tree = commentDAO.streamCommentTreeById(rootPath, 1, 5)) {
+                return tree.map(CommentReply::getId).toList();
+            }
+        });
+
+        assertEquals(List.of(2, 3, 4), ids);
+    }
+
+    private void insert(int id, int parentId, String path, int level) {
+        jdbcTemplate.update("INSERT INTO comment (id, parent_id, path, level, body, user, is_deleted, descendant_count, " +
+                "created_at, updated_at) VALUES (?, ?, ?, ?, 'body', 'km', FALSE, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                id, parentId, path, level);
+    }
+}
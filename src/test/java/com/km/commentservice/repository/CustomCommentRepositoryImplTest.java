@@ -9,6 +9,7 @@ import java.util.List;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.dao.AncestryStrategy;
 import com.km.commentservice.dao.impl.CustomCommentRepositoryImpl;
 import com.km.commentservice.dto.CommentReply;
 import com.km.commentservice.utils.TestUtils;
@@ -24,6 +25,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -66,6 +68,31 @@ class CustomCommentRepositoryImplTest {
         assertFalse(result.isEmpty());
     }
 
+    @Test
+    void getCommentTreeByIdUsesClosureTableWhenConfigured() throws JsonProcessingException {
+        ReflectionTestUtils.setField(customCommentRepository, "ancestryStrategy", AncestryStrategy.CLOSURE);
+        TypedQuery<CommentReply> query = mock(TypedQuery.class);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(entityManager.createQuery(anyString(), eq(CommentReply.class))).thenReturn(query);
+        List<CommentReply> commentDbResponse = objectMapper.readValue(
+                TestUtils.getFileContents("testing/comment-dao-flat-response.json"),
+                new TypeReference<List<CommentReply>>() {});
+        when(query.getResultList()).thenReturn(commentDbResponse);
+
+        List<CommentReply> result = customCommentRepository.getCommentTreeById("path", 1, 1);
+
+        String expectedQuery = TestUtils.getFileContents("testing/comment-tree-closure-query.txt");
+
+        verify(query, times(2)).setParameter(anyString(), any());
+        verify(entityManager, times(1)).createQuery(expectedQuery, CommentReply.class);
+        assertFalse(result.isEmpty());
+
+        //Top level tree spans all comments and is still read by path
+        customCommentRepository.getCommentTreeById("", 0, 1);
+        verify(entityManager, times(1)).createQuery(TestUtils.getFileContents("testing/comment-tree-query.txt"),
+                CommentReply.class);
+    }
+
     @Test
     void getCommentsAtLevelReturnsCommentReplies() throws JsonProcessingException {
         TypedQuery<CommentReply> query = mock(TypedQuery.class);
@@ -87,4 +114,26 @@ class CustomCommentRepositoryImplTest {
         verify(entityManager, times(1)).createQuery(expectedQuery, CommentReply.class);
         assertFalse(result.isEmpty());
     }
+
+    @Test
+    void getCommentsAtLevelAfterSeeksWithoutOffset() throws JsonProcessingException {
+        TypedQuery<CommentReply> query = mock(TypedQuery.class);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.setMaxResults(anyInt())).thenReturn(query);
+        when(entityManager.createQuery(anyString(), eq(CommentReply.class))).thenReturn(query);
+        List<CommentReply> commentDbResponse = objectMapper.readValue(
+                TestUtils.getFileContents("testing/comment-dao-flat-response-single-level.json"),
+                new TypeReference<List<CommentReply>>() {});
+
+        when(query.getResultList()).thenReturn(commentDbResponse);
+
+        List<CommentReply> result = customCommentRepository.getCommentsAtLevelAfter("1", 1, "1-5", 5, 10);
+
+        String expectedQuery = TestUtils.getFileContents("testing/comment-level-seek-query.txt");
+        verify(query, times(4)).setParameter(anyString(), any());
+        verify(query, never()).setFirstResult(anyInt());
+        verify(query, times(1)).setMaxResults(10);
+        verify(entityManager, times(1)).createQuery(expectedQuery, CommentReply.class);
+        assertFalse(result.isEmpty());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.km.commentservice.repository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.km.commentservice.dao.AncestryStrategy;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dao.ReactionDAO;
+import com.km.commentservice.dao.impl.CustomCommentRepositoryImpl;
+import com.km.commentservice.model.CommentPath;
+import com.km.commentservice.model.ReactionType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the read queries of the DAOs against an embedded H2 database with the schema generated from the entities, and
+ * fails when the plan of one of them scans a whole table. Every SELECT is recorded with its bound parameters on the way
+ * to the database and explained with the same parameters, so the plans are the ones of the queries as issued.
+ *
+ * @author karanm
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:queryplan;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(QueryPlanTest.RecordingConfig.class)
+class QueryPlanTest {
+    private static final List<RecordedQuery> RECORDED_QUERIES = new CopyOnWriteArrayList<>();
+
+    // H2 names the index of every table it reads, followed by the conditions it seeks on; an index without any is read whole
+    private static final Pattern UNCONDITIONED_INDEX_SCAN = Pattern.compile("/\\* PUBLIC\\.\\w+ \\*/");
+
+    @Autowired
+    private CommentDAO commentDAO;
+
+    @Autowired
+    private ReactionDAO reactionDAO;
+
+    @Autowired
+    private CustomCommentRepositoryImpl customCommentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM comment", Integer.class) == 0) {
+            seed();
+        }
+        RECORDED_QUERIES.clear();
+    }
+
+    @Test
+    void commentTreeQueriesUseIndexes() {
+        String path = CommentPath.of(null, 1);
+        commentDAO.getCommentTreeById(path, 1, 5);
+        commentDAO.getCommentsAtLevel(path, 1, PageRequest.of(1, 10));
+        commentDAO.getCommentsAtLevel("", 0, PageRequest.of(0, 10));
+        commentDAO.getCommentsAtLevelAfter(path, 1, CommentPath.of(path, 50), 50, 10);
+        commentDAO.findByParentId(1);
+        commentDAO.findByLevel(2);
+        commentDAO.findAllById(List.of(1, 2, 3));
+        commentDAO.findHeaderById(1);
+        commentDAO.findHeadersByIdIn(List.of(1, 2, 3));
+        commentDAO.findLegacyPaths(CommentPath.LEGACY_PATHS_START, 10);
+
+        ReflectionTestUtils.setField(customCommentRepository, "ancestryStrategy", AncestryStrategy.CLOSURE);
+        try {
+            commentDAO.getCommentTreeById(path, 1, 5);
+        } finally {
+            ReflectionTestUtils.setField(customCommentRepository, "ancestryStrategy", AncestryStrategy.PATH);
+        }
+
+        assertNoTableScans(11);
+    }
+
+    @Test
+    void reactionQueriesUseIndexes() {
+        reactionDAO.findByIdCommentIdAndReactionTypeOrderByUpdatedAtDesc(1, ReactionType.LIKE, PageRequest.of(0, 10));
+        reactionDAO.findByIdCommentIdInAndIdUserIn(List.of(1, 2), List.of("user1", "user2"));
+
+        assertNoTableScans(2);
+    }
+
+    private void assertNoTableScans(int expectedQueries) {
+        List<RecordedQuery> queries = new ArrayList<>(RECORDED_QUERIES);
+        assertEquals(expectedQueries, queries.size());
+        for (RecordedQuery query : queries) {
+            String plan = explain(query);
+            assertFalse(plan.contains(".tableScan") || UNCONDITIONED_INDEX_SCAN.matcher(plan).find(),
+                    "Full table scan in plan:\n" + plan);
+        }
+    }
+
+    private String explain(RecordedQuery query) {
+        return jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query.sql())) {
+                for (Map.Entry<Integer, Object> parameter : query.parameters().entrySet()) {
+                    explain.setObject(parameter.getKey(), parameter.getValue());
+                }
+                try (ResultSet resultSet = explain.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+    }
+
+    // Ten threads of 100 comments, each a top level comment with replies three levels deep, and reactions to all of them
+    private void seed() {
+        List<Object[]> comments = new ArrayList<>();
+        List<Object[]> closures = new ArrayList<>();
+        int id = 0;
+        for (int thread = 0; thread < 10; thread++) {
+            int rootId = ++id;
+            String rootPath = CommentPath.of(null, rootId);
+            comments.add(new Object[]{rootId, 0, rootPath, 0});
+            closures.add(new Object[]{rootId, rootId, 0});
+            for (int reply = 1; reply < 100; reply++) {
+                int replyId = ++id;
+                int level = reply % 3 + 1;
+                String path = CommentPath.of(rootPath, replyId);
+                comments.add(new Object[]{replyId, rootId, path, level});
+                closures.add(new Object[]{rootId, replyId, 1});
+                closures.add(new Object[]{replyId, replyId, 0});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO comment (id, parent_id, path, level, body, user, is_deleted, descendant_count, " +
+                "created_at, updated_at) VALUES (?, ?, ?, ?, 'body', 'km', FALSE, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", comments);
+        jdbcTemplate.batchUpdate("INSERT INTO comment_closure (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)", closures);
+
+        List<Object[]> reactions = new ArrayList<>();
+        List<Object[]> counts = new ArrayList<>();
+        for (int commentId = 1; commentId <= id; commentId++) {
+            for (int user = 0; user < 5; user++) {
+                reactions.add(new Object[]{commentId, "user" + user, user % 2});
+            }
+            counts.add(new Object[]{commentId, ReactionType.LIKE.ordinal(), 3});
+            counts.add(new Object[]{commentId, ReactionType.DISLIKE.ordinal(), 2});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO reaction (comment_id, user, reaction_type, created_at, updated_at) " +
+                "VALUES (?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", reactions);
+        jdbcTemplate.batchUpdate("INSERT INTO reaction_count (comment_id, reaction_type, count) VALUES (?, ?, ?)", counts);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    private record RecordedQuery(String sql, Map<Integer, Object> parameters) {}
+
+    /**
+     * Wraps the data source so every prepared SELECT records its SQL and parameters when it is executed.
+     */
+    @TestConfiguration
+    static class RecordingConfig {
+        @Bean
+        static BeanPostProcessor recordingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return proxy(DataSource.class, dataSource, (method, args, result) ->
+                                "getConnection".equals(method.getName()) ? proxy(Connection.class, (Connection) result, QueryPlanTest::recordStatements) : result);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    private static Object recordStatements(Method method, Object[] args, Object result) {
+        if ("prepareStatement".equals(method.getName()) && args[0] instanceof String sql
+                && sql.trim().toLowerCase().startsWith("select")) {
+            Map<Integer, Object> parameters = new TreeMap<>();
+            return proxy(PreparedStatement.class, (PreparedStatement) result, (statementMethod, statementArgs, statementResult) -> {
+                String name = statementMethod.getName();
+                if (name.startsWith("set") && statementArgs != null && statementArgs.length >= 2
+                        && statementArgs[0] instanceof Integer index) {
+                    parameters.put(index, statementArgs[1]);
+                } else if ("executeQuery".equals(name)) {
+                    RECORDED_QUERIES.add(new RecordedQuery(sql, new TreeMap<>(parameters)));
+                }
+                return statementResult;
+            });
+        }
+        return result;
+    }
+
+    private interface ResultHandler {
+        Object handle(Method method, Object[] args, Object result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, ResultHandler handler) {
+        return (T) Proxy.newProxyInstance(QueryPlanTest.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return handler.handle(method, args, method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
@@ -0,0 +1,123 @@
+package com.km.commentservice.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.km.commentservice.dao.ReactionCountDAO;
+import com.km.commentservice.model.ReactionCount;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the reaction count upserts against an embedded H2 database.
+ *
+ * @author karanm
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactioncount;NON_KEYWORDS=USER;DB_CLOSE_DELAY=-1",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReactionCountUpsertTest {
+    @Autowired
+    private ReactionCountDAO reactionCountDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        reactionCountDAO.deleteAllInBatch();
+    }
+
+    @Test
+    void upsertCreatesMissingCountAndIncrementsExistingCount() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> reactionCountDAO.upsertReactionCount(1, ReactionType.LIKE, 1));
+        assertEquals(1, count(1, ReactionType.LIKE));
+
+        transactionTemplate.executeWithoutResult(status -> reactionCountDAO.upsertReactionCount(1, ReactionType.LIKE, 2));
+        assertEquals(3, count(1, ReactionType.LIKE));
+        assertNull(find(1, ReactionType.DISLIKE));
+    }
+
+    @Test
+    void negativeChangeToMissingCountDoesNotGoBelowZero() {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(2);
+        reactionCountId.setReactionType(ReactionType.DISLIKE);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> reactionCountDAO.upsertReactionCount(1, ReactionType.LIKE, -1));
+        transactionTemplate.executeWithoutResult(status -> reactionCountDAO.applyReactionCountDeltas(Map.of(reactionCountId, -3L)));
+        assertEquals(0, count(1, ReactionType.LIKE));
+        assertEquals(0, count(2, ReactionType.DISLIKE));
+
+        transactionTemplate.executeWithoutResult(status -> reactionCountDAO.applyReactionCountDeltas(Map.of(reactionCountId, 2L)));
+        assertEquals(2, count(2, ReactionType.DISLIKE));
+    }
+
+    @Test
+    void concurrentUpsertsAreAllCounted() throws Exception {
+        int threads = 16;
+        int reactionsPerThread = 256;
+        int comments = 4;
+        ReactionType[] reactionTypes = ReactionType.values();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            tasks.add(() -> {
+                //Every thread reacts evenly to every (comment, reaction type) pair, starting with the first reactions
+                for (int j = 0; j < reactionsPerThread; j++) {
+                    int commentId = (j / reactionTypes.length) % comments + 1;
+                    ReactionType reactionType = reactionTypes[j % reactionTypes.length];
+                    transactionTemplate.executeWithoutResult(
+                            status -> reactionCountDAO.upsertReactionCount(commentId, reactionType, 1));
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        executor.shutdown();
+
+        long expected = (long) threads * reactionsPerThread / (comments * reactionTypes.length);
+        for (int commentId = 1; commentId <= comments; commentId++) {
+            for (ReactionType reactionType : reactionTypes) {
+                assertEquals(expected, count(commentId, reactionType));
+            }
+        }
+    }
+
+    private long count(Integer commentId, ReactionType reactionType) {
+        ReactionCount reactionCount = find(commentId, reactionType);
+        return reactionCount != null ? reactionCount.getCount() : 0;
+    }
+
+    private ReactionCount find(Integer commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(commentId);
+        reactionCountId.setReactionType(reactionType);
+        return reactionCountDAO.findById(reactionCountId).orElse(null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.km.commentservice.service;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reserves blocks from an embedded H2 database.
+ *
+ * @author karanm
+ */
+class CommentIdAllocatorTest {
+    private static final String URL = "jdbc:h2:mem:commentid;DB_CLOSE_DELAY=-1";
+
+    private HikariDataSource sequenceDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private CommentIdAllocator commentIdAllocator;
+
+    @BeforeEach
+    void setUp() {
+        sequenceDataSource = dataSource("sequence", 1);
+        jdbcTemplate = new JdbcTemplate(sequenceDataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS comment_id_sequence");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS comment");
+        jdbcTemplate.execute("CREATE TABLE comment_id_sequence (id INT PRIMARY KEY, next_val BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE comment (id INT PRIMARY KEY)");
+        jdbcTemplate.update("INSERT INTO comment_id_sequence VALUES (1, 101)");
+
+        commentIdAllocator = new CommentIdAllocator();
+        ReflectionTestUtils.setField(commentIdAllocator, "blockSize", 10);
+        ReflectionTestUtils.setField(commentIdAllocator, "sequenceDataSource", sequenceDataSource);
+        commentIdAllocator.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sequenceDataSource.close();
+    }
+
+    @Test
+    void nextIdReservesOneBlockPerBlockSizeIds() {
+        for (int id = 101; id <= 125; id++) {
+            assertEquals(id, commentIdAllocator.nextId());
+        }
+        assertEquals(131L, nextVal());
+    }
+
+    @Test
+    void nextIdContinuesAfterHighestCommentWhenSequenceRowIsMissing() {
+        jdbcTemplate.update("DELETE FROM comment_id_sequence");
+        jdbcTemplate.update("INSERT INTO comment VALUES (41)");
+
+        assertEquals(42, commentIdAllocator.nextId());
+        assertEquals(52L, nextVal());
+    }
+
+    @Test
+    void nextIdReservesWhileTheApplicationPoolIsExhausted() throws Exception {
+        // The caller's transaction holds the only connection of the application pool
+        try (HikariDataSource applicationDataSource = dataSource("application", 1);
+             Connection callerConnection = applicationDataSource.getConnection()) {
+            callerConnection.setAutoCommit(false);
+
+            assertEquals(101, commentIdAllocator.nextId());
+            callerConnection.rollback();
+        }
+        assertEquals(111L, nextVal());
+    }
+
+    @Test
+    void nextIdHandsOutUniqueIdsToConcurrentCallers() throws Exception {
+        int threads = 8;
+        int idsPerThread = 1000;
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            tasks.add(() -> {
+                for (int j = 0; j < idsPerThread; j++) {
+                    assertTrue(ids.add(commentIdAllocator.nextId()));
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * idsPerThread, ids.size());
+        assertEquals(101L + threads * idsPerThread, nextVal());
+    }
+
+    private long nextVal() {
+        return jdbcTemplate.queryForObject("SELECT next_val FROM comment_id_sequence WHERE id = 1", Long.class);
+    }
+
+    private static HikariDataSource dataSource(String poolName, int size) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setPoolName(poolName);
+        dataSource.setMaximumPoolSize(size);
+        dataSource.setConnectionTimeout(1000);
+        return dataSource;
+    }
+}
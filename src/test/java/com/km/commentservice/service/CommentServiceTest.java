@@ -3,21 +3,35 @@ package com.km.commentservice.service;
 /**
  * @author karanm
  */
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.counter.ReactionCounter;
+import com.km.commentservice.dao.CommentClosureDAO;
 import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentBatchItemReply;
+import com.km.commentservice.dto.CommentBatchItemRequest;
+import com.km.commentservice.dto.CommentBatchReply;
+import com.km.commentservice.dto.CommentCursor;
 import com.km.commentservice.dto.CommentPostRequest;
 import com.km.commentservice.dto.CommentPutRequest;
 import com.km.commentservice.dto.CommentReply;
 import com.km.commentservice.dto.NestedCommentReply;
+import com.km.commentservice.exception.BadRequestException;
 import com.km.commentservice.exception.OperationNotAllowedException;
 import com.km.commentservice.exception.ResourceNotFoundException;
 import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentClosure;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.snapshot.CommentTreeSnapshotStore;
 import com.km.commentservice.utils.TestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -25,9 +39,14 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import static com.km.commentservice.Constants.*;
 import static com.km.commentservice.utils.TestUtils.assertNestedReplyEqual;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -40,6 +59,24 @@ class CommentServiceTest {
     @Mock
     private CommentDAO commentDAO;
 
+    @Mock
+    private CommentClosureDAO commentClosureDAO;
+
+    @Mock
+    private CacheInvalidator cacheInvalidator;
+
+    @Mock
+    private ReactionCounter reactionCounter;
+
+    @Mock
+    private CommentIdAllocator commentIdAllocator;
+
+    @Mock
+    private CommentTreeMetrics commentTreeMetrics;
+
+    @Mock
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
     @InjectMocks
     private CommentService commentService;
 
@@ -76,8 +113,8 @@ class CommentServiceTest {
                 TestUtils.getFileContents("testing/comment-dao-flat-response.json"),
                 new TypeReference<List<CommentReply>>() {});
 
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
 
         when(commentDAO.getCommentTreeById(anyString(), anyInt(), anyInt())).thenReturn(commentDbResponse);
 
@@ -93,19 +130,53 @@ class CommentServiceTest {
 
     @Test
     void getCommentTreeByIdReturnsEmptyNestedCommentReplyWhenCommentNotFound() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
         NestedCommentReply nestedCommentReply =  commentService.getCommentTreeById(1, 5);
         assertTrue(assertNestedReplyEqual(new NestedCommentReply(), nestedCommentReply));
     }
 
+    @Test
+    void streamCommentTreeByIdWritesNestedCommentReply() throws IOException {
+        List<CommentReply> commentDbResponse = List.of(
+                CommentReply.builder().id(2).parentId(1).body("child").build(),
+                CommentReply.builder().id(3).parentId(2).body("grandchild").build());
+
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
+        when(commentDAO.streamCommentTreeById("1", 1, 5)).thenReturn(commentDbResponse.stream());
+
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.createGenerator(writer)) {
+            commentService.streamCommentTreeById(1, 5, generator);
+        }
+
+        NestedCommentReply streamedReply = objectMapper.readValue(writer.toString(), NestedCommentReply.class);
+        NestedCommentReply expectedReply = commentService.createNestedCommentReply(commentDbResponse).withMaxDepth(5);
+        assertTrue(assertNestedReplyEqual(expectedReply, streamedReply));
+        assertEquals(5, streamedReply.getMaxDepth());
+    }
+
+    @Test
+    void streamCommentTreeByIdWritesEmptyObjectWhenCommentNotFound() throws IOException {
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
+
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.createGenerator(writer)) {
+            commentService.streamCommentTreeById(1, 5, generator);
+        }
+
+        assertEquals("{}", writer.toString());
+        verify(commentDAO, never()).streamCommentTreeById(anyString(), anyInt(), anyInt());
+    }
+
     @Test
     void getCommentsAtLevelReturnsNestedCommentReply() throws JsonProcessingException {
         List<CommentReply> commentDbResponse = objectMapper.readValue(
                 TestUtils.getFileContents("testing/comment-dao-flat-response-single-level.json"),
                 new TypeReference<List<CommentReply>>() {});
 
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
 
         when(commentDAO.getCommentsAtLevel(anyString(), anyInt(), any())).thenReturn(commentDbResponse);
 
@@ -120,9 +191,45 @@ class CommentServiceTest {
         assertTrue(assertNestedReplyEqual(expectedNestedCommentReply, actualNestedReply));
     }
 
+    @Test
+    void getCommentsAtLevelSeeksPastCursor() throws JsonProcessingException {
+        List<CommentReply> commentDbResponse = objectMapper.readValue(
+                TestUtils.getFileContents("testing/comment-dao-flat-response-single-level.json"),
+                new TypeReference<List<CommentReply>>() {});
+        CommentReply lastReply = commentDbResponse.get(commentDbResponse.size() - 1);
+
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
+        when(commentDAO.getCommentsAtLevel(anyString(), anyInt(), any())).thenReturn(commentDbResponse);
+        when(commentDAO.getCommentsAtLevelAfter(anyString(), anyInt(), anyString(), anyInt(), anyInt()))
+                .thenReturn(commentDbResponse);
+
+        //A full page hands out the cursor of its last comment
+        NestedCommentReply firstPage = commentService.getCommentsAtLevel(1, 0, commentDbResponse.size());
+        assertNotNull(firstPage.getNextCursor());
+        CommentCursor cursor = CommentCursor.decode(firstPage.getNextCursor());
+        assertEquals(lastReply.getId(), cursor.id());
+        assertEquals("1-" + lastReply.getId(), cursor.path());
+
+        NestedCommentReply nextPage = commentService.getCommentsAtLevel(1, 0, commentDbResponse.size() + 1,
+                firstPage.getNextCursor());
+        verify(commentDAO, times(1)).getCommentsAtLevelAfter("1", 1, cursor.path(), cursor.id(),
+                commentDbResponse.size() + 1);
+        //A partial page is the last one
+        assertNull(nextPage.getNextCursor());
+        assertNull(nextPage.getPageNo());
+    }
+
+    @Test
+    void getCommentsAtLevelThrowsBadRequestExceptionWhenCursorIsInvalid() {
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
+        assertThrows(BadRequestException.class, () -> commentService.getCommentsAtLevel(1, 0, 10, "not-a-cursor"));
+    }
+
     @Test
     void getCommentsAtLevelReturnsEmptyNestedCommentReplyWhenCommentNotFound() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
         NestedCommentReply nestedCommentReply =  commentService.getCommentsAtLevel(1, 0, 10);
         assertTrue(assertNestedReplyEqual(new NestedCommentReply(), nestedCommentReply));
     }
@@ -135,22 +242,81 @@ class CommentServiceTest {
         request.setUser("TestUser");
 
         //Posting comment on top layer
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
-        when(commentDAO.save(any(Comment.class))).thenAnswer(i -> i.getArguments()[0]);
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
+        when(commentIdAllocator.nextId()).thenReturn(5, 6);
         CommentReply result = commentService.postComment(request);
+        assertEquals(5, result.getId());
         assertEquals(request.getBody(), result.getBody());
         assertEquals(request.getUser(), result.getUser());
 
         //Posting comment under another comment
         request.setParentId(1);
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of( new Comment(1, "test", 0, "1", 0, "km", false)));
-        when(commentDAO.save(any(Comment.class))).thenAnswer(i -> i.getArguments()[0]);
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of( new CommentHeader(1, 0, "1", 0, false, "km")));
         CommentReply result2 = commentService.postComment(request);
+        assertEquals(6, result2.getId());
         assertEquals(request.getBody(), result2.getBody());
         assertEquals(request.getUser(), result2.getUser());
         assertEquals(request.getParentId(), result2.getParentId());
     }
 
+    @Test
+    void postCommentInsertsCommentOnceWithItsPath() {
+        CommentPostRequest request = new CommentPostRequest();
+        request.setParentId(2);
+        request.setBody("Test");
+        request.setUser("TestUser");
+
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(new CommentHeader(2, 1, "1-2", 1, false, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(3);
+        commentService.postComment(request);
+
+        ArgumentCaptor<Comment> comment = ArgumentCaptor.forClass(Comment.class);
+        verify(commentDAO, times(1)).persist(comment.capture());
+        assertEquals(3, comment.getValue().getId());
+        assertEquals("1-2-3", comment.getValue().getPath());
+        assertEquals(2, comment.getValue().getLevel());
+        verify(commentDAO, never()).save(any(Comment.class));
+    }
+
+    @Test
+    void postCommentIncrementsDescendantCountOfAncestors() {
+        CommentPostRequest request = new CommentPostRequest();
+        request.setParentId(2);
+        request.setBody("Test");
+        request.setUser("TestUser");
+
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(new CommentHeader(2, 1, "1-2", 1, false, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(3, 4);
+        commentService.postComment(request);
+        verify(commentDAO, times(1)).updateDescendantCount(List.of(1, 2), 1L);
+        verify(commentClosureDAO, times(1)).insertClosureRows(3, 2);
+        verify(cacheInvalidator, times(1)).evictCommentTree("1-2-3");
+
+        //Top level comments have no ancestors to update
+        request.setParentId(0);
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
+        commentService.postComment(request);
+        verify(commentDAO, times(2)).persist(any(Comment.class));
+        verifyNoMoreInteractions(ignoreStubs(commentDAO));
+    }
+
+    @Test
+    void postCommentPatchesSnapshotBeforeEvictingCachedTrees() {
+        CommentPostRequest request = new CommentPostRequest();
+        request.setParentId(2);
+        request.setBody("Test");
+        request.setUser("TestUser");
+
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(new CommentHeader(2, 1, "1-2", 1, false, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(3);
+        commentService.postComment(request);
+
+        // Both run after commit in the order registered, a read between them must not cache the unpatched snapshot
+        InOrder inOrder = inOrder(commentTreeSnapshotStore, cacheInvalidator);
+        inOrder.verify(commentTreeSnapshotStore).commentsChanged(anyList());
+        inOrder.verify(cacheInvalidator).evictCommentTree("1-2-3");
+    }
+
     @Test
     void postCommentThrowsResourceNotFoundExceptionWhenParentNotFound() {
         CommentPostRequest request = new CommentPostRequest();
@@ -158,11 +324,124 @@ class CommentServiceTest {
         request.setBody("Test");
         request.setUser("TestUser");
 
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () -> commentService.postComment(request));
     }
 
+    @Test
+    void postCommentThrowsBadRequestExceptionWhenPathDoesNotFit() {
+        CommentPostRequest request = new CommentPostRequest();
+        request.setParentId(1);
+        request.setBody("Test");
+        request.setUser("TestUser");
+
+        // 108 levels fill the path column, a reply below them does not fit
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "/000001".repeat(108), 107, false, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(2);
+
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> commentService.postComment(request));
+        assertEquals(PATH_TOO_LONG, exception.getMessage());
+        verify(commentDAO, never()).persist(any(Comment.class));
+        verifyNoInteractions(commentClosureDAO);
+    }
+
+    @Test
+    void postCommentsResolvesParentsInsideBatch() {
+        List<CommentBatchItemRequest> requests = List.of(
+                batchItem("a", null, 0),
+                batchItem("b", "a", null),
+                batchItem(null, "b", null),
+                batchItem(null, null, 5));
+
+        when(commentDAO.findHeadersByIdIn(Set.of(5))).thenReturn(List.of(new CommentHeader(5, 4, "4-5", 1, false, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(10, 11, 12, 13);
+        CommentBatchReply reply = commentService.postComments(requests);
+
+        assertEquals(4, reply.getSize());
+        assertEquals(4, reply.getCreated());
+        assertEquals(0, reply.getFailed());
+        assertEquals(List.of(10, 11, 12, 13), reply.getResults().stream().map(result -> result.getComment().getId()).toList());
+        assertEquals("b", reply.getResults().get(1).getRef());
+        assertEquals(10, reply.getResults().get(1).getComment().getParentId());
+
+        ArgumentCaptor<Comment> comments = ArgumentCaptor.forClass(Comment.class);
+        verify(commentDAO, times(4)).persist(comments.capture());
+        assertEquals(List.of("/00000a", "/00000a/00000b", "/00000a/00000b/00000c", "4-5-13"), comments.getAllValues().stream().map(Comment::getPath).toList());
+        assertEquals(List.of(0, 1, 2, 2), comments.getAllValues().stream().map(Comment::getLevel).toList());
+        assertEquals(List.of(2L, 1L, 0L, 0L), comments.getAllValues().stream().map(Comment::getDescendantCount).toList());
+
+        ArgumentCaptor<List<CommentClosure>> closures = ArgumentCaptor.forClass(List.class);
+        verify(commentClosureDAO, times(1)).persistAll(closures.capture());
+        assertEquals(9, closures.getValue().size());
+        assertTrue(closures.getValue().stream().anyMatch(closure -> closure.getId().getAncestorId() == 10
+                && closure.getId().getDescendantId() == 12 && closure.getDepth() == 2));
+        verify(commentClosureDAO, never()).insertClosureRows(anyInt(), anyInt());
+
+        verify(commentDAO, times(1)).updateDescendantCount(argThat(ids -> Set.copyOf(ids).equals(Set.of(4, 5))), eq(1L));
+        verify(commentDAO, never()).save(any(Comment.class));
+        verify(cacheInvalidator, times(1)).evictCommentTrees(List.of("/00000a", "/00000a/00000b", "/00000a/00000b/00000c", "4-5-13"));
+    }
+
+    @Test
+    void postCommentsReportsFailedCommentsAndPostsTheRest() {
+        List<CommentBatchItemRequest> requests = List.of(
+                batchItem("a", null, 7),
+                batchItem("b", "a", null),
+                batchItem(null, "missing", null),
+                batchItem(null, null, 8),
+                batchItem("c", null, 0),
+                batchItem("c", null, 0),
+                batchItem(null, "c", 0),
+                batchItem(null, null, null),
+                batchItem(null, "c", null));
+
+        when(commentDAO.findHeadersByIdIn(Set.of(7, 8))).thenReturn(List.of(new CommentHeader(8, 0, "8", 0, true, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(20, 21);
+        CommentBatchReply reply = commentService.postComments(requests);
+
+        assertEquals(9, reply.getSize());
+        assertEquals(2, reply.getCreated());
+        assertEquals(7, reply.getFailed());
+        assertEquals(Arrays.asList(PARENT_NOT_FOUND, PARENT_FAILED, PARENT_REF_NOT_FOUND, PARENT_DELETED, null,
+                DUPLICATE_REF, PARENT_ID_AND_REF, PARENT_REQUIRED, null),
+                reply.getResults().stream().map(CommentBatchItemReply::getError).toList());
+        assertEquals(21, reply.getResults().get(8).getComment().getId());
+        assertEquals(20, reply.getResults().get(8).getComment().getParentId());
+        verify(commentDAO, times(2)).persist(any(Comment.class));
+        verify(commentDAO, never()).updateDescendantCount(anyCollection(), anyLong());
+    }
+
+    @Test
+    void postCommentsReportsRepliesWhosePathDoesNotFit() {
+        List<CommentBatchItemRequest> requests = List.of(
+                batchItem("deep", null, 1),
+                batchItem(null, "deep", null),
+                batchItem(null, null, 2));
+
+        when(commentDAO.findHeadersByIdIn(Set.of(1, 2))).thenReturn(List.of(
+                new CommentHeader(1, 0, "/000001".repeat(108), 107, false, "km"),
+                new CommentHeader(2, 0, "/000002", 0, false, "km")));
+        when(commentIdAllocator.nextId()).thenReturn(10, 11);
+        CommentBatchReply reply = commentService.postComments(requests);
+
+        assertEquals(1, reply.getCreated());
+        assertEquals(Arrays.asList(PATH_TOO_LONG, PARENT_FAILED, null),
+                reply.getResults().stream().map(CommentBatchItemReply::getError).toList());
+        ArgumentCaptor<Comment> comment = ArgumentCaptor.forClass(Comment.class);
+        verify(commentDAO, times(1)).persist(comment.capture());
+        assertEquals("/000002/00000b", comment.getValue().getPath());
+    }
+
+    @Test
+    void postCommentsThrowsBadRequestExceptionWhenBatchIsTooLarge() {
+        List<CommentBatchItemRequest> requests = Collections.nCopies(5001, batchItem(null, null, 0));
+
+        assertThrows(BadRequestException.class, () -> commentService.postComments(requests));
+        verifyNoInteractions(commentDAO, commentIdAllocator);
+    }
+
     @Test
     void putCommentUpdatesCommentBody() {
         CommentPutRequest request = new CommentPutRequest();
@@ -178,6 +457,8 @@ class CommentServiceTest {
 
         CommentReply result = commentService.putComment(request);
         assertEquals(request.getBody(), result.getBody());
+        verify(commentDAO, times(1)).save(existingComment);
+        verify(commentDAO, never()).persist(any(Comment.class));
     }
 
     @Test
@@ -219,6 +500,8 @@ class CommentServiceTest {
 
         CommentReply result = commentService.deleteComment(1, user);
         assertTrue(result.getIsDeleted());
+        verify(commentDAO, times(1)).save(existingComment);
+        verify(commentDAO, never()).persist(any(Comment.class));
     }
 
     @Test
@@ -241,4 +524,14 @@ class CommentServiceTest {
 
         assertThrows(OperationNotAllowedException.class, () -> commentService.deleteComment(1, user));
     }
-}
\ No newline at end of file
+
+    private static CommentBatchItemRequest batchItem(String ref, String parentRef, Integer parentId) {
+        CommentBatchItemRequest request = new CommentBatchItemRequest();
+        request.setRef(ref);
+        request.setParentRef(parentRef);
+        request.setParentId(parentId);
+        request.setBody("Test");
+        request.setUser("TestUser");
+        return request;
+    }
+}
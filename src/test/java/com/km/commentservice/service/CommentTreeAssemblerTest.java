@@ -0,0 +1,79 @@
+package com.km.commentservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.dto.NestedCommentReply;
+import com.km.commentservice.utils.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import static com.km.commentservice.utils.TestUtils.assertNestedReplyEqual;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author karanm
+ */
+class CommentTreeAssemblerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void assembleReturnsEmptyReplyForNoRows() {
+        assertTrue(assertNestedReplyEqual(new NestedCommentReply(), CommentTreeAssembler.assemble(List.of())));
+    }
+
+    @Test
+    void assembleNestsRowsInPathOrder() {
+        //Ordered by path: 1-10 sorts before 1-2 and the subtree of 1-2 before 1-20
+        List<CommentReply> rows = List.of(
+                reply(10, 1), reply(11, 10), reply(2, 1), reply(5, 2), reply(7, 5), reply(6, 2), reply(20, 1));
+
+        NestedCommentReply topReply = CommentTreeAssembler.assemble(rows);
+
+        assertNull(topReply.getCommentReply());
+        assertEquals(List.of(10, 2, 20), childIds(topReply));
+        assertEquals(List.of(11), childIds(topReply.getNestedCommentReplies().get(0)));
+        NestedCommentReply second = topReply.getNestedCommentReplies().get(1);
+        assertEquals(List.of(5, 6), childIds(second));
+        assertEquals(List.of(7), childIds(second.getNestedCommentReplies().get(0)));
+        assertTrue(topReply.getNestedCommentReplies().get(2).getNestedCommentReplies().isEmpty());
+    }
+
+    @Test
+    void assembleNestsDeepChainsBeyondInitialStack() {
+        List<CommentReply> rows = new ArrayList<>();
+        for (int id = 2; id < 100; id++) {
+            rows.add(reply(id, id - 1));
+        }
+        NestedCommentReply node = CommentTreeAssembler.assemble(rows);
+        for (int id = 2; id < 100; id++) {
+            assertEquals(List.of(id), childIds(node));
+            node = node.getNestedCommentReplies().get(0);
+        }
+        assertTrue(node.getNestedCommentReplies().isEmpty());
+    }
+
+    @Test
+    void assembleFallsBackToIdLookupForRowsOutOfPathOrder() throws JsonProcessingException {
+        //Rows ordered by id instead of path
+        List<CommentReply> rows = objectMapper.readValue(
+                TestUtils.getFileContents("testing/comment-dao-flat-response.json"),
+                new TypeReference<List<CommentReply>>() {});
+
+        NestedCommentReply expected = objectMapper.readValue(
+                TestUtils.getFileContents("testing/comment-nested-response.json"), NestedCommentReply.class);
+
+        assertTrue(assertNestedReplyEqual(expected, CommentTreeAssembler.assemble(rows)));
+    }
+
+    private static CommentReply reply(int id, int parentId) {
+        return CommentReply.builder().id(id).parentId(parentId).build();
+    }
+
+    private static List<Integer> childIds(NestedCommentReply nestedCommentReply) {
+        return nestedCommentReply.getNestedCommentReplies().stream().map(n -> n.getCommentReply().getId()).toList();
+    }
+}
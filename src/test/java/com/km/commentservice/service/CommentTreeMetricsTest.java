@@ -0,0 +1,84 @@
+package com.km.commentservice.service;
+
+import java.util.List;
+
+import com.km.commentservice.dto.CommentReply;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author karanm
+ */
+class CommentTreeMetricsTest {
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final CommentTreeMetrics commentTreeMetrics = new CommentTreeMetrics();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(commentTreeMetrics, "meterRegistry", registry);
+    }
+
+    @Test
+    void recordTreeRecordsRowsDepthAndWidth() {
+        commentTreeMetrics.recordTree(CommentTreeMetrics.FULL_TREE_QUERY,
+                List.of(reply(1, 1), reply(2, 2), reply(3, 2), reply(4, 3), reply(5, 2)));
+
+        assertEquals(5, summary("commentservice.tree.rows", CommentTreeMetrics.FULL_TREE_QUERY).totalAmount());
+        assertEquals(3, summary("commentservice.tree.depth", CommentTreeMetrics.FULL_TREE_QUERY).totalAmount());
+        assertEquals(3, summary("commentservice.tree.width", CommentTreeMetrics.FULL_TREE_QUERY).totalAmount());
+    }
+
+    @Test
+    void recordTreeOfNoRowsRecordsOnlyRows() {
+        commentTreeMetrics.recordTree(CommentTreeMetrics.FULL_TREE_QUERY, List.of());
+
+        assertEquals(1, summary("commentservice.tree.rows", CommentTreeMetrics.FULL_TREE_QUERY).count());
+        assertNull(registry.find("commentservice.tree.depth").summary());
+    }
+
+    @Test
+    void recordTreeLeavesRowsWithoutLevelOutOfDepthAndWidth() {
+        commentTreeMetrics.recordTree(CommentTreeMetrics.FULL_TREE_QUERY,
+                List.of(reply(1, 1), CommentReply.builder().id(2).build(), reply(3, 2)));
+
+        assertEquals(3, summary("commentservice.tree.rows", CommentTreeMetrics.FULL_TREE_QUERY).totalAmount());
+        assertEquals(2, summary("commentservice.tree.depth", CommentTreeMetrics.FULL_TREE_QUERY).totalAmount());
+        assertEquals(1, summary("commentservice.tree.width", CommentTreeMetrics.FULL_TREE_QUERY).totalAmount());
+    }
+
+    @Test
+    void snapshotReadsAreCountedByResult() {
+        commentTreeMetrics.recordSnapshotRead("hit");
+        commentTreeMetrics.recordSnapshotRead("hit");
+        commentTreeMetrics.recordSnapshotRead("built");
+
+        assertEquals(2, registry.get("commentservice.tree.snapshot").tag("result", "hit").counter().count());
+        assertEquals(1, registry.get("commentservice.tree.snapshot").tag("result", "built").counter().count());
+    }
+
+    @Test
+    void metersAreTaggedByQuery() {
+        commentTreeMetrics.recordRows(CommentTreeMetrics.NEXT_LEVEL_QUERY, 10);
+        commentTreeMetrics.recordRows(CommentTreeMetrics.NEXT_LEVEL_QUERY, 4);
+        commentTreeMetrics.recordRows(CommentTreeMetrics.FULL_TREE_STREAM_QUERY, 7);
+
+        assertEquals(2, summary("commentservice.tree.rows", CommentTreeMetrics.NEXT_LEVEL_QUERY).count());
+        assertEquals(14, summary("commentservice.tree.rows", CommentTreeMetrics.NEXT_LEVEL_QUERY).totalAmount());
+        assertEquals(7, summary("commentservice.tree.rows", CommentTreeMetrics.FULL_TREE_STREAM_QUERY).totalAmount());
+    }
+
+    private DistributionSummary summary(String name, String query) {
+        return registry.get(name).tag("query", query).summary();
+    }
+
+    private static CommentReply reply(int id, int level) {
+        return CommentReply.builder().id(id).level(level).build();
+    }
+}
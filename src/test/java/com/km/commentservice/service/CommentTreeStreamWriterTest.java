@@ -0,0 +1,56 @@
+package com.km.commentservice.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.dto.CommentReply;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author karanm
+ */
+class CommentTreeStreamWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writeMatchesSerializedNestedReplyForNoRows() throws IOException {
+        assertStreamedEqualsAssembled(List.of(), 5);
+    }
+
+    @Test
+    void writeMatchesSerializedNestedReplyForRowsInPathOrder() throws IOException {
+        //Ordered by path: 1-10 sorts before 1-2 and the subtree of 1-2 before 1-20
+        List<CommentReply> rows = List.of(
+                reply(10, 1), reply(11, 10), reply(2, 1), reply(5, 2), reply(7, 5), reply(6, 2), reply(20, 1));
+        assertStreamedEqualsAssembled(rows, 5);
+        assertStreamedEqualsAssembled(rows, null);
+    }
+
+    @Test
+    void writeMatchesSerializedNestedReplyForDeepChains() throws IOException {
+        List<CommentReply> rows = new ArrayList<>();
+        for (int id = 2; id < 100; id++) {
+            rows.add(reply(id, id - 1));
+        }
+        assertStreamedEqualsAssembled(rows, 100);
+    }
+
+    private void assertStreamedEqualsAssembled(List<CommentReply> rows, Integer maxDepth) throws IOException {
+        StringWriter streamed = new StringWriter();
+        try (JsonGenerator generator = objectMapper.createGenerator(streamed)) {
+            CommentTreeStreamWriter.write(rows.iterator(), generator, maxDepth);
+        }
+        String assembled = objectMapper.writeValueAsString(CommentTreeAssembler.assemble(rows).withMaxDepth(maxDepth));
+        assertEquals(assembled, streamed.toString());
+    }
+
+    private static CommentReply reply(int id, int parentId) {
+        return CommentReply.builder().id(id).parentId(parentId).body("body " + id).user("km").replies(0L).build();
+    }
+}
@@ -1,27 +1,39 @@
 package com.km.commentservice.service;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.km.commentservice.CommentserviceApplication;
+import com.km.commentservice.cache.CacheInvalidator;
+import com.km.commentservice.counter.ReactionCounter;
 import com.km.commentservice.dao.CommentDAO;
-import com.km.commentservice.dao.ReactionCountDAO;
 import com.km.commentservice.dao.ReactionDAO;
+import com.km.commentservice.dto.ReactionBatchItemReply;
+import com.km.commentservice.dto.ReactionBatchReply;
 import com.km.commentservice.dto.ReactionReply;
 import com.km.commentservice.dto.ReactionRequest;
+import com.km.commentservice.exception.BadRequestException;
 import com.km.commentservice.exception.OperationNotAllowedException;
 import com.km.commentservice.exception.ResourceNotFoundException;
-import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
 import com.km.commentservice.model.Reaction;
+import com.km.commentservice.model.ReactionCountId;
 import com.km.commentservice.model.ReactionId;
 import com.km.commentservice.model.ReactionType;
+import com.km.commentservice.snapshot.CommentTreeSnapshotStore;
 import com.km.commentservice.utils.TestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -32,6 +44,9 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import static com.km.commentservice.Constants.COMMENT_NOT_FOUND;
+import static com.km.commentservice.Constants.REACTION_SUPERSEDED;
+import static com.km.commentservice.Constants.REACTION_UNCHANGED;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -48,7 +63,13 @@ class ReactionServiceTest {
     private CommentDAO commentDAO;
 
     @Mock
-    private ReactionCountDAO reactionCountDAO;
+    private ReactionCounter reactionCounter;
+
+    @Mock
+    private CacheInvalidator cacheInvalidator;
+
+    @Mock
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
 
     @InjectMocks
     private ReactionService reactionService;
@@ -63,8 +84,8 @@ class ReactionServiceTest {
 
     @Test
     void getUsersForReactionReturnsUserListWhenReactionExists() throws JsonProcessingException {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
 
         List<Reaction> reactionDbResponse = objectMapper.readValue(
                 TestUtils.getFileContents("testing/reaction-dao-response.json"),
@@ -80,14 +101,14 @@ class ReactionServiceTest {
 
     @Test
     void getUsersForReactionThrowsExceptionWhenCommentDoesNotExist() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
         assertThrows(ResourceNotFoundException.class, () -> reactionService.getUsersForReaction(1, ReactionType.LIKE, 0, 10));
     }
 
     @Test
     void postReactionToCommentWhenReactionDoesNotExist() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
         when(reactionDAO.findById(any(ReactionId.class))).thenReturn(Optional.empty());
 
         ReactionRequest newReactionRequest = new ReactionRequest();
@@ -104,15 +125,69 @@ class ReactionServiceTest {
         when(reactionDAO.save(any(Reaction.class))).thenReturn(newReaction);
 
         ReactionReply reactionReply = reactionService.postReactionToComment(newReactionRequest);
+        verify(reactionCounter, times(1)).increment(1, ReactionType.DISLIKE);
         assertEquals(newReaction.getReactionType(), reactionReply.getReactionType());
         assertEquals(newReaction.getId().getCommentId(), reactionReply.getCommentId());
         assertEquals(newReaction.getId().getUser(), reactionReply.getUser());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void postReactionsAppliesOneNetChangePerCount() {
+        List<ReactionRequest> requests = List.of(
+                reactionRequest(1, "u1", ReactionType.LIKE),
+                reactionRequest(1, "u2", ReactionType.LIKE),
+                reactionRequest(1, "u3", ReactionType.DISLIKE),
+                reactionRequest(2, "u1", ReactionType.LIKE),
+                reactionRequest(2, "u1", ReactionType.DISLIKE),
+                reactionRequest(3, "u1", ReactionType.LIKE),
+                reactionRequest(1, "u4", ReactionType.LIKE));
+
+        when(commentDAO.findHeadersByIdIn(Set.of(1, 2, 3))).thenReturn(List.of(
+                new CommentHeader(1, 0, "1", 0, false, "km"),
+                new CommentHeader(2, 1, "1-2", 1, false, "km"),
+                new CommentHeader(3, 0, "3", 0, true, "km")));
+        Reaction changedReaction = reaction(1, "u3", ReactionType.LIKE);
+        when(reactionDAO.findByIdCommentIdInAndIdUserIn(Set.of(1, 2, 3), Set.of("u1", "u2", "u3", "u4")))
+                .thenReturn(List.of(changedReaction, reaction(1, "u4", ReactionType.LIKE)));
+
+        ReactionBatchReply reply = reactionService.postReactions(requests);
+
+        assertEquals(7, reply.getSize());
+        assertEquals(4, reply.getApplied());
+        assertEquals(3, reply.getFailed());
+        assertEquals(Arrays.asList(null, null, null, REACTION_SUPERSEDED, null, COMMENT_NOT_FOUND, REACTION_UNCHANGED),
+                reply.getResults().stream().map(ReactionBatchItemReply::getError).toList());
+        assertEquals(ReactionType.DISLIKE, changedReaction.getReactionType());
+
+        ArgumentCaptor<List<Reaction>> newReactions = ArgumentCaptor.forClass(List.class);
+        verify(reactionDAO, times(1)).persistAll(newReactions.capture());
+        assertEquals(3, newReactions.getValue().size());
+        verify(reactionCounter, times(1)).add(Map.of(
+                reactionCountId(1, ReactionType.LIKE), 1L,
+                reactionCountId(1, ReactionType.DISLIKE), 1L,
+                reactionCountId(2, ReactionType.DISLIKE), 1L));
+        verify(reactionCounter, never()).increment(anyInt(), any(ReactionType.class));
+        verify(reactionCounter, never()).decrement(anyInt(), any(ReactionType.class));
+        verify(commentDAO, never()).findHeaderById(anyInt());
+        verify(reactionDAO, never()).findById(any(ReactionId.class));
+        verify(cacheInvalidator, times(1)).evictCommentTrees(List.of("1", "1-2"));
+        verify(cacheInvalidator, times(1)).evictReactionUsers(1, ReactionType.LIKE, ReactionType.DISLIKE);
+        verify(cacheInvalidator, times(1)).evictReactionUsers(2, ReactionType.DISLIKE);
+    }
+
+    @Test
+    void postReactionsThrowsBadRequestExceptionWhenBatchIsTooLarge() {
+        List<ReactionRequest> requests = Collections.nCopies(5001, reactionRequest(1, "km", ReactionType.LIKE));
+
+        assertThrows(BadRequestException.class, () -> reactionService.postReactions(requests));
+        verifyNoInteractions(commentDAO, reactionDAO, reactionCounter);
+    }
+
     @Test
     void postReactionToCommentWhenReactionExists() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
 
         //different reaction as before
         ReactionId reactionId = new ReactionId();
@@ -137,10 +212,40 @@ class ReactionServiceTest {
         assertThrows(OperationNotAllowedException.class, () -> reactionService.postReactionToComment(newReactionRequest));
     }
 
+    @Test
+    void updateReactionPatchesSnapshotBeforeEvictingCachedTrees() {
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(2, 1, "1-2", 1, false, "km")));
+        when(reactionCounter.writesInTransaction()).thenReturn(true);
+
+        ReactionId reactionId = new ReactionId();
+        reactionId.setCommentId(2);
+        reactionId.setUser("km");
+        Reaction previousReaction = new Reaction();
+        previousReaction.setId(reactionId);
+        previousReaction.setReactionType(ReactionType.LIKE);
+        when(reactionDAO.findById(any(ReactionId.class))).thenReturn(Optional.of(previousReaction));
+        Reaction newReaction = new Reaction();
+        newReaction.setId(reactionId);
+        newReaction.setReactionType(ReactionType.DISLIKE);
+        when(reactionDAO.save(any(Reaction.class))).thenReturn(newReaction);
+
+        ReactionRequest reactionRequest = new ReactionRequest();
+        reactionRequest.setCommentId(2);
+        reactionRequest.setReactionType(ReactionType.DISLIKE);
+        reactionRequest.setUser("km");
+        reactionService.updateReactionOnComment(reactionRequest);
+
+        // Both run after commit in the order registered, a read between them must not cache the unpatched snapshot
+        InOrder inOrder = inOrder(commentTreeSnapshotStore, cacheInvalidator);
+        inOrder.verify(commentTreeSnapshotStore).reactionCountsChanged(anyMap(), any());
+        inOrder.verify(cacheInvalidator).evictCommentTree("1-2");
+    }
+
     @Test
     void updateReactionToCommentWhenReactionExists() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
 
         //different reaction as before
         ReactionId reactionId = new ReactionId();
@@ -162,6 +267,10 @@ class ReactionServiceTest {
         when(reactionDAO.save(any(Reaction.class))).thenReturn(newReaction);
 
         ReactionReply reactionReply = reactionService.updateReactionOnComment(newReactionRequest);
+        verify(cacheInvalidator, times(1)).evictCommentTree("1");
+        verify(cacheInvalidator, times(1)).evictReactionUsers(1, ReactionType.DISLIKE, ReactionType.LIKE);
+        verify(reactionCounter, times(1)).increment(1, ReactionType.DISLIKE);
+        verify(reactionCounter, times(1)).decrement(1, ReactionType.LIKE);
         assertEquals(newReaction.getReactionType(), reactionReply.getReactionType());
         assertEquals(newReaction.getId().getCommentId(), reactionReply.getCommentId());
         assertEquals(newReaction.getId().getUser(), reactionReply.getUser());
@@ -173,7 +282,7 @@ class ReactionServiceTest {
 
     @Test
     void postReactionToCommentThrowsErrorWhenCommentIsDeleted() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
         ReactionRequest reactionRequest = new ReactionRequest();
         reactionRequest.setCommentId(1);
         reactionRequest.setReactionType(ReactionType.LIKE);
@@ -183,8 +292,8 @@ class ReactionServiceTest {
 
     @Test
     void deleteReactionFromCommentReturnsReactionIdWhenReactionExists() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
 
         ReactionId reactionId = new ReactionId();
         reactionId.setCommentId(1);
@@ -196,19 +305,45 @@ class ReactionServiceTest {
 
         when(reactionDAO.deleteById(any(ReactionId.class))).thenReturn(1);
         assertEquals(1, reactionService.deleteReactionFromComment(1, "km"));
+        verify(reactionCounter, times(1)).decrement(1, ReactionType.DISLIKE);
     }
 
     @Test
     void deleteReactionFromCommentThrowsExceptionWhenCommentDoesNotExist() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.empty());
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.empty());
         assertThrows(ResourceNotFoundException.class, () -> reactionService.deleteReactionFromComment(1, "km"));
     }
 
     @Test
     void deleteReactionFromCommentThrowsExceptionWhenReactionDoesNotExist() {
-        when(commentDAO.findById(anyInt())).thenReturn(Optional.of(
-                new Comment(1, "test", 0, "1", 0, "km", false)));
+        when(commentDAO.findHeaderById(anyInt())).thenReturn(Optional.of(
+                new CommentHeader(1, 0, "1", 0, false, "km")));
         when(reactionDAO.findById(any(ReactionId.class))).thenReturn(Optional.empty());
         assertThrows(ResourceNotFoundException.class, () -> reactionService.deleteReactionFromComment(1, "user"));
     }
+
+    private static ReactionRequest reactionRequest(Integer commentId, String user, ReactionType reactionType) {
+        ReactionRequest reactionRequest = new ReactionRequest();
+        reactionRequest.setCommentId(commentId);
+        reactionRequest.setUser(user);
+        reactionRequest.setReactionType(reactionType);
+        return reactionRequest;
+    }
+
+    private static Reaction reaction(Integer commentId, String user, ReactionType reactionType) {
+        ReactionId reactionId = new ReactionId();
+        reactionId.setCommentId(commentId);
+        reactionId.setUser(user);
+        Reaction reaction = new Reaction();
+        reaction.setId(reactionId);
+        reaction.setReactionType(reactionType);
+        return reaction;
+    }
+
+    private static ReactionCountId reactionCountId(Integer commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(commentId);
+        reactionCountId.setReactionType(reactionType);
+        return reactionCountId;
+    }
 }
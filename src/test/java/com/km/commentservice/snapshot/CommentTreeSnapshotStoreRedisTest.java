@@ -0,0 +1,171 @@
+package com.km.commentservice.snapshot;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.ReactionType;
+import com.km.commentservice.service.CommentTreeMetrics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import static com.km.commentservice.snapshot.SnapshotFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the snapshot scripts against an embedded Redis server.
+ *
+ * @author karanm
+ */
+class CommentTreeSnapshotStoreRedisTest {
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Mock
+    private CommentDAO commentDAO;
+
+    @Mock
+    private CommentTreeMetrics commentTreeMetrics;
+
+    @InjectMocks
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        redisTemplate.execute((RedisConnection connection) -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "enabled", true);
+        when(redisTemplateProvider.getIfAvailable()).thenReturn(redisTemplate);
+    }
+
+    @Test
+    void patchedSnapshotIsReadBackByRange() {
+        CommentReply reply = reply(2, 1, 1);
+        reply.setLikeCount(1L);
+        when(commentDAO.getCommentTreeById(ROOT_PATH, 1, Integer.MAX_VALUE, 10001)).thenReturn(List.of(reply, reply(3, 2, 2)));
+        assertTrue(commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 5).isPresent());
+
+        Comment edited = comment(3, 2, NESTED_REPLY_PATH, 2);
+        edited.setBody("edited");
+        commentTreeSnapshotStore.commentsChanged(List.of(edited, comment(4, 2, OTHER_NESTED_REPLY_PATH, 2)));
+        commentTreeSnapshotStore.reactionCountsChanged(Map.of(reactionCountId(3, ReactionType.DISLIKE), 2L),
+                commentId -> NESTED_REPLY_PATH);
+
+        List<CommentReply> subtree = commentTreeSnapshotStore.getTree(header(2, 1, REPLY_PATH, 1), 5).orElseThrow();
+        assertEquals(List.of(3, 4), subtree.stream().map(CommentReply::getId).toList());
+        assertEquals("edited", subtree.get(0).getBody());
+        assertEquals(2L, subtree.get(0).getDislikeCount());
+        assertEquals(0L, subtree.get(1).getDislikeCount());
+
+        List<CommentReply> topLevel = commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 1).orElseThrow();
+        assertEquals(List.of(2), topLevel.stream().map(CommentReply::getId).toList());
+        assertEquals(2L, topLevel.get(0).getReplies());
+        assertEquals(1L, topLevel.get(0).getLikeCount());
+
+        verify(commentDAO, times(1)).getCommentTreeById(anyString(), anyInt(), anyInt(), anyInt());
+        verify(commentTreeMetrics, times(2)).recordSnapshotRead(CommentTreeSnapshotStore.HIT);
+    }
+
+    @Test
+    void buildIsNotInstalledWhenTheThreadIsWrittenMeanwhile() {
+        when(commentDAO.getCommentTreeById(ROOT_PATH, 1, Integer.MAX_VALUE, 10001)).thenAnswer(invocation -> {
+            commentTreeSnapshotStore.commentsChanged(List.of(comment(3, 2, NESTED_REPLY_PATH, 2)));
+            return List.of(reply(2, 1, 1));
+        });
+
+        assertTrue(commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 5).isPresent());
+
+        assertNull(redisTemplate.opsForValue().get(KEY + ":state"));
+        assertFalse(redisTemplate.hasKey(KEY));
+    }
+
+    @Test
+    void buildIsNotInstalledWithinTheReplicaLagOfAWrite() {
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "replicaReads", true);
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "replicaMaxLag", 60000L);
+        commentTreeSnapshotStore.commentsChanged(List.of(comment(2, 1, REPLY_PATH, 1)));
+        when(commentDAO.getCommentTreeById(ROOT_PATH, 1, Integer.MAX_VALUE, 10001)).thenReturn(List.of(reply(2, 1, 1)));
+
+        commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 5);
+        commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 5);
+
+        verify(commentTreeMetrics, times(2)).recordSnapshotRead(CommentTreeSnapshotStore.BUILT);
+    }
+
+    @Test
+    void patchWithoutSnapshotOnlyBumpsTheVersion() {
+        commentTreeSnapshotStore.commentsChanged(List.of(comment(2, 1, REPLY_PATH, 1)));
+        commentTreeSnapshotStore.reactionCountsChanged(Map.of(reactionCountId(2, ReactionType.LIKE), 1L),
+                commentId -> REPLY_PATH);
+
+        assertEquals("2", redisTemplate.opsForValue().get(KEY + ":version"));
+        assertFalse(redisTemplate.hasKey(KEY));
+        assertFalse(redisTemplate.hasKey(KEY + ":counts"));
+    }
+
+    @Test
+    void patchAddingAReplyToAFullSnapshotMarksTheThreadOversized() {
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "maxSize", 2);
+        when(commentDAO.getCommentTreeById(ROOT_PATH, 1, Integer.MAX_VALUE, 3)).thenReturn(List.of(
+                reply(2, 1, 1), reply(3, 2, 2)));
+        commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 5);
+
+        // Replacing a reply of a full snapshot keeps it
+        commentTreeSnapshotStore.commentsChanged(List.of(comment(3, 2, NESTED_REPLY_PATH, 2)));
+        assertEquals(2L, redisTemplate.opsForZSet().zCard(KEY));
+
+        commentTreeSnapshotStore.commentsChanged(List.of(comment(4, 2, OTHER_NESTED_REPLY_PATH, 2)));
+
+        Optional<List<CommentReply>> tree = commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 5);
+        assertTrue(tree.isEmpty());
+        assertFalse(redisTemplate.hasKey(KEY));
+        verify(commentTreeMetrics).recordSnapshotRead(CommentTreeSnapshotStore.OVERSIZED);
+        verify(commentDAO, times(1)).getCommentTreeById(anyString(), anyInt(), anyInt(), anyInt());
+    }
+}
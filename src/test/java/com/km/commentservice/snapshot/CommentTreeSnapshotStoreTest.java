@@ -0,0 +1,207 @@
+package com.km.commentservice.snapshot;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.km.commentservice.dao.CommentDAO;
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.ReactionType;
+import com.km.commentservice.service.CommentTreeMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static com.km.commentservice.snapshot.SnapshotFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author karanm
+ */
+@RunWith(MockitoJUnitRunner.class)
+class CommentTreeSnapshotStoreTest {
+    private static final List<String> READ_KEYS = List.of(KEY, KEY + ":counts", KEY + ":state");
+    private static final List<String> WRITE_KEYS = List.of(KEY, KEY + ":counts", KEY + ":state", KEY + ":version",
+            KEY + ":recent-write");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private CommentDAO commentDAO;
+
+    @Mock
+    private CommentTreeMetrics commentTreeMetrics;
+
+    @InjectMocks
+    private CommentTreeSnapshotStore commentTreeSnapshotStore;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "enabled", true);
+        when(redisTemplateProvider.getIfAvailable()).thenReturn(redisTemplate);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void getTreeReadsTheRangeBelowTheParentAndTrimsIt() throws Exception {
+        when(redisTemplate.execute(any(RedisScript.class), eq(READ_KEYS), any(Object[].class))).thenReturn(List.of(
+                "complete",
+                member(REPLY_PATH, row(2, 1, 1)), "4", "0",
+                member(NESTED_REPLY_PATH, row(3, 2, 2)), "0", "1"));
+
+        Optional<List<CommentReply>> tree = commentTreeSnapshotStore.getTree(header(1, 0, ROOT_PATH, 0), 1);
+
+        assertTrue(tree.isPresent());
+        assertEquals(1, tree.get().size());
+        CommentReply reply = tree.get().get(0);
+        assertEquals(2, reply.getId());
+        assertEquals(1L, reply.getReplies());
+        assertEquals(4L, reply.getLikeCount());
+        assertEquals(0L, reply.getDislikeCount());
+        assertEquals(List.of("[/000001/", "(/0000010", "LIKE", "DISLIKE"), List.of(scriptArgs(READ_KEYS)));
+        verify(commentTreeMetrics).recordSnapshotRead(CommentTreeSnapshotStore.HIT);
+        verifyNoInteractions(commentDAO);
+    }
+
+    @Test
+    void getTreeBuildsMissingSnapshot() throws Exception {
+        when(redisTemplate.execute(any(RedisScript.class), eq(READ_KEYS), any(Object[].class))).thenReturn(List.of());
+        when(valueOperations.get(KEY + ":version")).thenReturn("7");
+        CommentReply reply = reply(2, 1, 1);
+        reply.setLikeCount(4L);
+        CommentReply nestedReply = reply(3, 2, 2);
+        when(commentDAO.getCommentTreeById(ROOT_PATH, 1, Integer.MAX_VALUE, 10001)).thenReturn(List.of(reply, nestedReply));
+
+        Optional<List<CommentReply>> tree = commentTreeSnapshotStore.getTree(header(2, 1, REPLY_PATH, 1), 5);
+
+        assertTrue(tree.isPresent());
+        assertEquals(List.of(3), tree.get().stream().map(CommentReply::getId).toList());
+        assertEquals(0L, tree.get().get(0).getReplies());
+        assertEquals(List.of("7", "3600000", "2",
+                        member(REPLY_PATH, CommentTreeSnapshotStore.SnapshotRow.of(reply)),
+                        member(NESTED_REPLY_PATH, CommentTreeSnapshotStore.SnapshotRow.of(nestedReply)),
+                        REPLY_PATH + " LIKE", "4"),
+                List.of(scriptArgs(WRITE_KEYS)));
+        verify(commentTreeMetrics).recordSnapshotRead(CommentTreeSnapshotStore.BUILT);
+    }
+
+    @Test
+    void getTreeMarksOversizedThread() {
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "maxSize", 1);
+        when(redisTemplate.execute(any(RedisScript.class), eq(READ_KEYS), any(Object[].class))).thenReturn(List.of());
+        when(commentDAO.getCommentTreeById(ROOT_PATH, 1, Integer.MAX_VALUE, 2)).thenReturn(List.of(
+                reply(2, 1, 1), reply(3, 2, 2)));
+
+        assertTrue(commentTreeSnapshotStore.getTree(header(2, 1, REPLY_PATH, 1), 5).isEmpty());
+        verify(valueOperations).set(KEY + ":state", "oversized", Duration.ofMillis(3600000));
+        verify(redisTemplate, never()).execute(any(RedisScript.class), eq(WRITE_KEYS), any(Object[].class));
+        verify(commentTreeMetrics).recordSnapshotRead(CommentTreeSnapshotStore.OVERSIZED);
+    }
+
+    @Test
+    void getTreeSkipsThreadMarkedOversized() {
+        when(redisTemplate.execute(any(RedisScript.class), eq(READ_KEYS), any(Object[].class))).thenReturn(List.of("oversized"));
+
+        assertTrue(commentTreeSnapshotStore.getTree(header(2, 1, REPLY_PATH, 1), 5).isEmpty());
+        verify(commentTreeMetrics).recordSnapshotRead(CommentTreeSnapshotStore.OVERSIZED);
+        verifyNoInteractions(commentDAO);
+    }
+
+    @Test
+    void getTreeFallsBackWhenRedisFails() {
+        when(redisTemplate.execute(any(RedisScript.class), eq(READ_KEYS), any(Object[].class)))
+                .thenThrow(new IllegalStateException("connection refused"));
+
+        assertTrue(commentTreeSnapshotStore.getTree(header(2, 1, REPLY_PATH, 1), 5).isEmpty());
+        verify(commentTreeMetrics).recordSnapshotRead(CommentTreeSnapshotStore.UNAVAILABLE);
+    }
+
+    @Test
+    void getTreeSkipsLegacyPaths() {
+        assertTrue(commentTreeSnapshotStore.getTree(header(2, 1, "1-2", 1), 5).isEmpty());
+        verifyNoInteractions(redisTemplate, commentDAO);
+    }
+
+    @Test
+    void commentsChangedSetsTheMemberOfTheComment() throws Exception {
+        Comment comment = comment(3, 2, NESTED_REPLY_PATH, 2);
+
+        commentTreeSnapshotStore.commentsChanged(List.of(comment));
+
+        assertEquals(List.of("3600000", "0", "10000", "set", NESTED_REPLY_PATH,
+                        objectMapper.writeValueAsString(CommentTreeSnapshotStore.SnapshotRow.of(comment))),
+                List.of(scriptArgs(WRITE_KEYS)));
+    }
+
+    @Test
+    void commentsChangedSetsTheRecentWriteWithReplicaReads() {
+        ReflectionTestUtils.setField(commentTreeSnapshotStore, "replicaReads", true);
+
+        commentTreeSnapshotStore.commentsChanged(List.of(comment(3, 2, NESTED_REPLY_PATH, 2)));
+
+        assertEquals("2000", scriptArgs(WRITE_KEYS)[1]);
+    }
+
+    @Test
+    void commentsChangedSkipsTopLevelComments() {
+        commentTreeSnapshotStore.commentsChanged(List.of(comment(1, 0, ROOT_PATH, 0)));
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void reactionCountsChangedIncrementsTheCountFields() {
+        commentTreeSnapshotStore.reactionCountsChanged(Map.of(reactionCountId(2, ReactionType.LIKE), -1L),
+                commentId -> REPLY_PATH);
+
+        assertEquals(List.of("3600000", "0", "10000", "incr", REPLY_PATH + " LIKE", "-1"),
+                List.of(scriptArgs(WRITE_KEYS)));
+    }
+
+    @Test
+    void reactionCountsChangedSkipsZeroDeltas() {
+        commentTreeSnapshotStore.reactionCountsChanged(Map.of(reactionCountId(2, ReactionType.LIKE), 0L),
+                commentId -> REPLY_PATH);
+
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    private Object[] scriptArgs(List<String> keys) {
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(keys), args.capture());
+        return args.getValue();
+    }
+
+    private String member(String path, CommentTreeSnapshotStore.SnapshotRow row) throws Exception {
+        return path + " " + objectMapper.writeValueAsString(row);
+    }
+
+    private static CommentTreeSnapshotStore.SnapshotRow row(int id, int parentId, int level) {
+        return new CommentTreeSnapshotStore.SnapshotRow(id, parentId, level, "user", "body " + id, null, null, false);
+    }
+}
@@ -0,0 +1,58 @@
+package com.km.commentservice.snapshot;
+
+import com.km.commentservice.dto.CommentReply;
+import com.km.commentservice.model.Comment;
+import com.km.commentservice.model.CommentHeader;
+import com.km.commentservice.model.CommentPath;
+import com.km.commentservice.model.ReactionCountId;
+import com.km.commentservice.model.ReactionType;
+
+/**
+ * Comments of the thread below top level comment 1 the snapshot store tests read and patch.
+ *
+ * @author karanm
+ */
+final class SnapshotFixtures {
+    private SnapshotFixtures() {}
+
+    static final String ROOT_PATH = CommentPath.of(null, 1);
+    static final String REPLY_PATH = CommentPath.of(ROOT_PATH, 2);
+    static final String NESTED_REPLY_PATH = CommentPath.of(REPLY_PATH, 3);
+    static final String OTHER_NESTED_REPLY_PATH = CommentPath.of(REPLY_PATH, 4);
+    static final String KEY = "commentservice:tree-snapshot:{1}";
+
+    static CommentHeader header(int id, int parentId, String path, int level) {
+        return new CommentHeader(id, parentId, path, level, false, "user");
+    }
+
+    static Comment comment(int id, int parentId, String path, int level) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setParentId(parentId);
+        comment.setPath(path);
+        comment.setLevel(level);
+        comment.setUser("user");
+        comment.setBody("body " + id);
+        return comment;
+    }
+
+    static ReactionCountId reactionCountId(int commentId, ReactionType reactionType) {
+        ReactionCountId reactionCountId = new ReactionCountId();
+        reactionCountId.setCommentId(commentId);
+        reactionCountId.setReactionType(reactionType);
+        return reactionCountId;
+    }
+
+    static CommentReply reply(int id, int parentId, int level) {
+        return CommentReply.builder()
+                .id(id)
+                .parentId(parentId)
+                .level(level)
+                .user("user")
+                .body("body " + id)
+                .replies(0L)
+                .likeCount(0L)
+                .dislikeCount(0L)
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+import argparse
+import statistics
+import threading
+import time
+from concurrent.futures import ThreadPoolExecutor
+
+import requests
+
+# Fires concurrent tree reads at a running service and prints throughput and latency per concurrency level.
+# Run it against the service started with spring.threads.virtual.enabled=false and =true to compare the two modes.
+
+thread_local = threading.local()
+
+
+def session():
+    if not hasattr(thread_local, "session"):
+        thread_local.session = requests.Session()
+    return thread_local.session
+
+
+def timed_get(url):
+    start = time.perf_counter()
+    response = session().get(url)
+    return time.perf_counter() - start, response.status_code
+
+
+def percentile(sorted_values, fraction):
+    return sorted_values[min(len(sorted_values) - 1, int(len(sorted_values) * fraction))]
+
+
+def run(url, concurrency, request_count):
+    start = time.perf_counter()
+    with ThreadPoolExecutor(max_workers=concurrency) as executor:
+        results = list(executor.map(lambda _: timed_get(url), range(request_count)))
+    elapsed = time.perf_counter() - start
+
+    latencies = sorted(latency * 1000 for latency, _ in results)
+    errors = sum(1 for _, status in results if status != 200)
+    print("concurrency={:>5}  req/s={:>8.1f}  p50={:>7.1f}ms  p99={:>7.1f}ms  mean={:>7.1f}ms  errors={}".format(
+        concurrency, request_count / elapsed, percentile(latencies, 0.50), percentile(latencies, 0.99),
+        statistics.mean(latencies), errors))
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--base-url", default="http://localhost:8080/v1/")
+    parser.add_argument("--parent-id", type=int, default=0)
+    parser.add_argument("--max-depth", type=int, default=5)
+    parser.add_argument("--concurrency", default="50,200,800", help="comma separated concurrency levels")
+    parser.add_argument("--requests", type=int, default=5000, help="requests per concurrency level")
+    args = parser.parse_args()
+
+    url = "{}comment/{}/fulltree?maxDepth={}".format(args.base_url, args.parent_id, args.max_depth)
+    # Warms up the JIT and the connection pools before measuring
+    run(url, 10, 500)
+    for level in args.concurrency.split(","):
+        run(url, int(level), args.requests)